@@ -0,0 +1,15 @@
+package se.jensen.linea.onsocial_app.DTO;
+
+/**
+ * Ett förslag i autocomplete för @alias, bara det som behövs för att visa och infoga en mention.
+ *
+ * @param id             Användarens ID.
+ * @param alias          Användarens alias.
+ * @param profilePicture Länk till profilbilden, null om användaren saknar bild.
+ */
+public record AliasSuggestionDTO(
+        Long id,
+        String alias,
+        String profilePicture
+) {
+}
@@ -0,0 +1,17 @@
+package se.jensen.linea.onsocial_app.DTO;
+
+import java.util.List;
+
+/**
+ * En sida av resultat för cursor-baserad (keyset) paginering.
+ * Klienten skickar tillbaka "next" för att hämta nästa sida.
+ *
+ * @param items Resultaten på den här sidan.
+ * @param next  Opak cursor till nästa sida, null om det inte finns fler resultat.
+ * @param <T>   Typen av DTO som sidan innehåller.
+ */
+public record CursorPageDTO<T>(
+        List<T> items,
+        String next
+) {
+}
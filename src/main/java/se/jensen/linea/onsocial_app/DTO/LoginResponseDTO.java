@@ -3,13 +3,15 @@ package se.jensen.linea.onsocial_app.DTO;
 /**
  * Data som skickas till klienten vid lyckad inloggning.
  *
- * @param token Den JWT-token som genereras vid lyckad inloggning.
- * @param user  Användarens information.
+ * @param token        Den JWT-token som genereras vid lyckad inloggning.
+ * @param user         Användarens information.
+ * @param refreshToken Används för att hämta en ny token via /auth/refresh utan att logga in igen.
  * @author Simeon
  * Dokumenterad: 2026-01-22
  */
 public record LoginResponseDTO(
         String token,
-        UserResponseDTO user
+        UserResponseDTO user,
+        String refreshToken
 ) {
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package se.jensen.linea.onsocial_app.DTO;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * DTO för att skapa flera inlägg i ett och samma anrop (t.ex. vid import).
+ * Varje inlägg valideras på samma sätt som i PostRequestDTO.
+ *
+ * @param posts Inläggen som ska skapas, minst 1 och max 500 per anrop.
+ */
+public record PostBatchRequestDTO(
+        @NotEmpty(message = "Posts are not allowed to be empty")
+        @Size(max = 500, message = "At most 500 posts can be created per request")
+        List<@Valid PostRequestDTO> posts
+) {
+}
@@ -5,9 +5,11 @@ import java.time.Instant;
 /**
  * DTO för att returnera postinformation till klienten.
  * PostResponseDTO innehåller inte mer information än nödvändigt, skyddar känslig data.
+ * version används som ETag och skickas tillbaka i If-Match vid uppdatering.
  *
  * @author Simeon
  * Dokumenterad: 2026-01-21
  */
-public record PostResponseDTO(Long id, String title, String content, Long userId, String userAlias, Instant created) {
+public record PostResponseDTO(Long id, String title, String content, Long userId, String userAlias, Instant created,
+                              Long version) {
 }
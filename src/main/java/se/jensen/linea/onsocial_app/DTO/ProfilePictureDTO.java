@@ -0,0 +1,15 @@
+package se.jensen.linea.onsocial_app.DTO;
+
+import java.util.Map;
+
+/**
+ * En uppladdad och bearbetad profilbild.
+ *
+ * @param url      URL till bilden, sparas som profilePicture på användaren.
+ * @param variants URL:er till miniatyrerna per storlek i pixlar (största sidan).
+ */
+public record ProfilePictureDTO(
+        String url,
+        Map<Integer, String> variants
+) {
+}
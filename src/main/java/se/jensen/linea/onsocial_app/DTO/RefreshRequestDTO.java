@@ -0,0 +1,14 @@
+package se.jensen.linea.onsocial_app.DTO;
+
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * Refresh token som klienten skickar till /auth/refresh och /auth/logout.
+ *
+ * @param refreshToken Refresh token från inloggningen eller senaste /auth/refresh.
+ */
+public record RefreshRequestDTO(
+        @NotBlank(message = "Refresh token is required")
+        String refreshToken
+) {
+}
@@ -0,0 +1,13 @@
+package se.jensen.linea.onsocial_app.DTO;
+
+/**
+ * Nya token som skickas till klienten från /auth/refresh.
+ *
+ * @param token        Ny JWT access token.
+ * @param refreshToken Ny refresh token, den gamla går inte att använda igen.
+ */
+public record TokenResponseDTO(
+        String token,
+        String refreshToken
+) {
+}
@@ -0,0 +1,39 @@
+package se.jensen.linea.onsocial_app.DTO;
+
+import java.util.Map;
+
+/**
+ * Status för en bilduppladdning som körs i bakgrunden (async=true i CloudinaryController).
+ *
+ * @param id     Jobbets id, används för att fråga efter status på /upload/jobs/{id}.
+ * @param status PENDING medan bilden laddas upp, sedan DONE eller FAILED.
+ * @param url      URL till den uppladdade bilden när status är DONE, annars null.
+ * @param variants URL:er till miniatyrerna per storlek när status är DONE, annars null.
+ * @param error    Felmeddelande när status är FAILED, annars null.
+ */
+public record UploadJobDTO(
+        String id,
+        Status status,
+        String url,
+        Map<Integer, String> variants,
+        String error
+) {
+
+    public enum Status {
+        PENDING,
+        DONE,
+        FAILED
+    }
+
+    public static UploadJobDTO pending(String id) {
+        return new UploadJobDTO(id, Status.PENDING, null, null, null);
+    }
+
+    public static UploadJobDTO done(String id, ProfilePictureDTO picture) {
+        return new UploadJobDTO(id, Status.DONE, picture.url(), picture.variants(), null);
+    }
+
+    public static UploadJobDTO failed(String id, String error) {
+        return new UploadJobDTO(id, Status.FAILED, null, null, error);
+    }
+}
@@ -1,14 +1,26 @@
 package se.jensen.linea.onsocial_app.DTO;
 
+import java.util.Map;
+
 /**
  * DTO för att returnera användarinformation till klienten.
  * UserResponseDTO innehåller inte mer information än nödvändigt, skyddar känslig data.
+ * <p>
+ * profilePictureVariants innehåller URL:er till förminskade versioner av profilbilden per storlek
+ * (t.ex. 64 och 256 pixlar), så att klienten inte behöver hämta hela bilden för en liten avatar.
  *
  * @author Simeon
  * Dokumenterad: 2026-01-21
  */
 public record UserResponseDTO(Long id, String alias, String email, String firstName, String lastName,
-                              String profilePicture, String role) {
-
+                              String profilePicture, String role, Map<Integer, String> profilePictureVariants) {
 
+    /**
+     * Skapar en UserResponseDTO utan miniatyrer. Används av JPQL-projektionen i UserRepository,
+     * miniatyrerna läggs till efteråt av UserMapper.withProfilePictureVariants.
+     */
+    public UserResponseDTO(Long id, String alias, String email, String firstName, String lastName,
+                           String profilePicture, String role) {
+        this(id, alias, email, firstName, lastName, profilePicture, role, Map.of());
+    }
 }
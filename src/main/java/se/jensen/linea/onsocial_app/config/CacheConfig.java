@@ -0,0 +1,54 @@
+package se.jensen.linea.onsocial_app.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.cache.autoconfigure.CacheManagerCustomizer;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Aktiverar Springs cache-stöd.
+ * Cacharna skapas av Spring Boot med Caffeine som bakomliggande cache.
+ * Storlek och livstid (TTL) styrs av spring.cache.caffeine.spec i application.properties,
+ * förutom användarcachen som har en egen, kortare livstid (cache.users.ttl).
+ * <p>
+ * Träffar, missar och evictions registreras i actuator under /actuator/metrics/cache.*
+ * eftersom "recordStats" är påslaget.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    /**
+     * Cache med PostResponseDTO, nyckel är inläggets ID.
+     */
+    public static final String POSTS_CACHE = "posts";
+
+    /**
+     * Cache med inloggningsuppgifter (CustomUserDetails), nyckel är alias eller email som användaren loggar in med.
+     */
+    public static final String USERS_CACHE = "users";
+
+    /**
+     * Registrerar användarcachen med kort livstid, så att en ändrad användare aldrig ligger kvar länge
+     * även om en eviction skulle missas.
+     *
+     * @param ttl     Hur länge en användare ligger i cachen.
+     * @param maxSize Max antal användare i cachen.
+     * @return En customizer som lägger till användarcachen i Caffeine-cachehanteraren.
+     */
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> usersCacheCustomizer(
+            @Value("${cache.users.ttl:60s}") Duration ttl,
+            @Value("${cache.users.max-size:10000}") long maxSize) {
+        return cacheManager -> cacheManager.registerCustomCache(USERS_CACHE, Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build());
+    }
+}
@@ -0,0 +1,113 @@
+package se.jensen.linea.onsocial_app.config;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import se.jensen.linea.onsocial_app.model.Post;
+import se.jensen.linea.onsocial_app.model.User;
+
+/**
+ * Kompletterar databasschemat i PostgreSQL när applikationen startar.
+ * <p>
+ * Hibernate (ddl-auto=update) kan inte skapa en genererad tsvector-kolumn, tillägget pg_trgm eller GIN-index,
+ * och vet inte att posts_seq måste börja efter de ID:n som redan finns i tabellen.
+ * Därför körs dessa satser här. Alla satser kan köras vid varje start.
+ * Andra databaser (t.ex. H2 i tester) hoppas över.
+ * <p>
+ * Satserna körs när alla bönor är skapade, alltså efter att Hibernate har uppdaterat schemat (och skapat
+ * posts_seq), men innan webbservern börjar ta emot anrop. Inget inlägg kan därför skapas innan sekvensen
+ * är flyttad förbi befintliga ID:n.
+ */
+@Component
+public class PostgresSchemaInitializer implements SmartInitializingSingleton {
+
+    /**
+     * Sökvektor för titel (vikt A) och innehåll (vikt B), uppdateras automatiskt av PostgreSQL.
+     * Konfigurationen "simple" används eftersom inläggen skrivs på flera språk.
+     */
+    private static final String ADD_SEARCH_VECTOR = """
+            ALTER TABLE posts ADD COLUMN IF NOT EXISTS search_vector tsvector
+                GENERATED ALWAYS AS (
+                    setweight(to_tsvector('simple', coalesce(title, '')), 'A') ||
+                    setweight(to_tsvector('simple', coalesce(post_content, '')), 'B')
+                ) STORED
+            """;
+
+    private static final String CREATE_SEARCH_INDEX = """
+            CREATE INDEX IF NOT EXISTS idx_posts_search_vector ON posts USING GIN (search_vector)
+            """;
+
+    /**
+     * Trigram-index på alias i gemener, för sökning på del av alias och stavfel (se UserRepository.searchByAlias).
+     */
+    private static final String CREATE_TRIGRAM_EXTENSION = """
+            CREATE EXTENSION IF NOT EXISTS pg_trgm
+            """;
+
+    private static final String CREATE_ALIAS_TRIGRAM_INDEX = """
+            CREATE INDEX IF NOT EXISTS idx_users_alias_trgm ON users USING GIN (lower(alias) gin_trgm_ops)
+            """;
+
+    /**
+     * Tabeller skapade innan unik-villkoren på alias och email fick namn har kvar villkor med
+     * genererade namn bredvid de namngivna. De tas bort, så att en dubblett alltid rapporteras
+     * med namnet som GlobalExceptionHandler känner igen.
+     */
+    private static final String DROP_LEGACY_USER_UNIQUE_CONSTRAINTS = """
+            DO $$
+            DECLARE legacy record;
+            BEGIN
+                FOR legacy IN
+                    SELECT c.conname
+                    FROM pg_constraint c
+                    JOIN pg_attribute a ON a.attrelid = c.conrelid AND a.attnum = c.conkey[1]
+                    WHERE c.conrelid = 'users'::regclass
+                      AND c.contype = 'u'
+                      AND array_length(c.conkey, 1) = 1
+                      AND a.attname IN ('alias', 'email')
+                      AND c.conname NOT IN ('%1$s', '%2$s')
+                      AND EXISTS (SELECT 1 FROM pg_constraint n
+                                  WHERE n.conrelid = c.conrelid
+                                    AND n.conname = CASE a.attname WHEN 'alias' THEN '%1$s' ELSE '%2$s' END)
+                LOOP
+                    EXECUTE format('ALTER TABLE users DROP CONSTRAINT %%I', legacy.conname);
+                END LOOP;
+            END $$
+            """.formatted(User.ALIAS_CONSTRAINT, User.EMAIL_CONSTRAINT);
+
+    /**
+     * Inlägg skapade före bytet från IDENTITY till sekvens har redan ID:n.
+     * Sekvensen flyttas förbi det högsta ID:t (plus ett helt block) så att nya ID:n inte krockar.
+     */
+    private static final String ALIGN_POST_SEQUENCE = """
+            SELECT setval('posts_seq', m.max_id + %d)
+            FROM (SELECT COALESCE(MAX(id), 0) AS max_id FROM posts) m
+            WHERE (SELECT last_value FROM posts_seq) <= m.max_id
+            """.formatted(Post.ID_ALLOCATION_SIZE);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PostgresSchemaInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!isPostgres()) {
+            return;
+        }
+        jdbcTemplate.execute(ADD_SEARCH_VECTOR);
+        jdbcTemplate.execute(CREATE_SEARCH_INDEX);
+        jdbcTemplate.execute(CREATE_TRIGRAM_EXTENSION);
+        jdbcTemplate.execute(CREATE_ALIAS_TRIGRAM_INDEX);
+        jdbcTemplate.execute(DROP_LEGACY_USER_UNIQUE_CONSTRAINTS);
+        jdbcTemplate.queryForList(ALIGN_POST_SEQUENCE);
+    }
+
+    private boolean isPostgres() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        return "PostgreSQL".equals(product);
+    }
+}
@@ -0,0 +1,67 @@
+package se.jensen.linea.onsocial_app.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+
+import java.time.Duration;
+
+/**
+ * Håller reda på vilka användare som nyss har skrivit till databasen.
+ * <p>
+ * Replikerna ligger alltid lite efter primärdatabasen. För att en användare ska se sina egna ändringar
+ * (read-your-writes) skickas användarens läsningar till primärdatabasen en kort stund efter varje skrivning.
+ * <p>
+ * Klassen registreras som TransactionExecutionListener, Spring Boot kopplar den till transaktionshanteraren
+ * så att afterCommit anropas efter varje transaktion.
+ */
+public class ReadYourWritesTracker implements TransactionExecutionListener {
+
+    private final Cache<String, Boolean> recentWriters;
+
+    /**
+     * @param stickyWindow Hur länge efter en skrivning användarens läsningar går till primärdatabasen.
+     */
+    public ReadYourWritesTracker(Duration stickyWindow) {
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(stickyWindow)
+                .maximumSize(100_000)
+                .build();
+    }
+
+    /**
+     * Registrerar den inloggade användaren som skribent efter en lyckad skrivtransaktion.
+     */
+    @Override
+    public void afterCommit(TransactionExecution transaction, Throwable commitFailure) {
+        if (commitFailure != null || transaction.isReadOnly()) {
+            return;
+        }
+        String user = currentUser();
+        if (user != null) {
+            recentWriters.put(user, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @return true om den inloggade användaren har skrivit inom tidsfönstret.
+     */
+    public boolean isSticky() {
+        String user = currentUser();
+        return user != null && recentWriters.getIfPresent(user) != null;
+    }
+
+    private static String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null
+                || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+}
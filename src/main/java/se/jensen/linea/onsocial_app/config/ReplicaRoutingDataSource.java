@@ -0,0 +1,158 @@
+package se.jensen.linea.onsocial_app.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * DataSource för läsningar som fördelar anslutningar mellan replikerna (round-robin).
+ * <p>
+ * Används som "read-only"-DataSource i LazyConnectionDataSourceProxy, så den tar bara emot
+ * anslutningar för transaktioner med readOnly = true.
+ * <ul>
+ *     <li>En replik som inte svarar markeras som nere en stund och hoppas över.</li>
+ *     <li>Om alla repliker är nere används primärdatabasen.</li>
+ *     <li>En användare som nyss har skrivit läser från primärdatabasen (se ReadYourWritesTracker).</li>
+ *     <li>Läsningar inom readFromPrimary går alltid till primärdatabasen.</li>
+ * </ul>
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    private static final ThreadLocal<Boolean> PRIMARY_READS = new ThreadLocal<>();
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final ReadYourWritesTracker tracker;
+    private final long retryAfterNanos;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param primary    Primärdatabasen, används som reserv.
+     * @param replicas   Replikernas anslutningspooler.
+     * @param tracker    Håller reda på användare som nyss har skrivit.
+     * @param retryAfter Hur länge en replik hoppas över efter ett anslutningsfel.
+     */
+    public ReplicaRoutingDataSource(HikariDataSource primary,
+                                    List<HikariDataSource> replicas,
+                                    ReadYourWritesTracker tracker,
+                                    Duration retryAfter) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.tracker = tracker;
+        this.retryAfterNanos = retryAfter.toNanos();
+    }
+
+    public HikariDataSource getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Kör en läsning mot primärdatabasen även om transaktionen är readOnly.
+     * Används för läsningar vars resultat cachas, så att en replik som ligger efter inte fyller cachen
+     * med gammal data. Anslutningen hämtas vid första SQL-satsen, så läsningen måste vara den första
+     * i transaktionen för att gå till primärdatabasen.
+     * <p>
+     * Utan repliker går alla läsningar redan till primärdatabasen och anropet gör ingen skillnad.
+     *
+     * @param read Läsningen som ska köras.
+     * @return Läsningens resultat.
+     */
+    public static <T> T readFromPrimary(Supplier<T> read) {
+        if (PRIMARY_READS.get() != null) {
+            return read.get();
+        }
+        PRIMARY_READS.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            PRIMARY_READS.remove();
+        }
+    }
+
+    /**
+     * Som readFromPrimary(Supplier), för läsningar utan resultat, t.ex. när en tabell strömmas in i minnet.
+     *
+     * @param read Läsningen som ska köras.
+     */
+    public static void readFromPrimary(Runnable read) {
+        readFromPrimary(() -> {
+            read.run();
+            return null;
+        });
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (PRIMARY_READS.get() != null || tracker.isSticky() || replicas.isEmpty()) {
+            return primary.getConnection();
+        }
+
+        long now = System.nanoTime();
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.isDown(now)) {
+                continue;
+            }
+            try {
+                return replica.dataSource.getConnection();
+            } catch (SQLException e) {
+                replica.markDown(now + retryAfterNanos);
+            }
+        }
+
+        // No healthy replica, fall back to the primary
+        return primary.getConnection();
+    }
+
+    /**
+     * Inloggningsuppgifterna är konfigurerade per pool och kan inte anges per anslutning.
+     *
+     * @throws SQLFeatureNotSupportedException Alltid, som JDBC-kontraktet föreskriver.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Credentials are configured per pool");
+    }
+
+    /**
+     * Stänger primärdatabasens och replikernas anslutningspooler.
+     */
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.dataSource.close());
+        primary.close();
+    }
+
+    /**
+     * En replik och tidpunkten då den får användas igen efter ett fel.
+     */
+    private static final class Replica {
+        private final HikariDataSource dataSource;
+        private volatile long downUntil;
+        private volatile boolean down;
+
+        private Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        private boolean isDown(long now) {
+            return down && now - downUntil < 0;
+        }
+
+        private void markDown(long until) {
+            this.downUntil = until;
+            this.down = true;
+        }
+    }
+}
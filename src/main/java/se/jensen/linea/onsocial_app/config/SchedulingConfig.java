@@ -0,0 +1,13 @@
+package se.jensen.linea.onsocial_app.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Aktiverar Springs stöd för schemalagda jobb (@Scheduled),
+ * t.ex. rensningen av utgångna refresh tokens i RefreshTokenService.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
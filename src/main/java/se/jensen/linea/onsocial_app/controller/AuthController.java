@@ -8,11 +8,15 @@ import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
 import se.jensen.linea.onsocial_app.DTO.*;
+import se.jensen.linea.onsocial_app.mapper.UserMapper;
 import se.jensen.linea.onsocial_app.security.CustomUserDetails;
-import se.jensen.linea.onsocial_app.security.CustomUserDetailsService;
+import se.jensen.linea.onsocial_app.security.TokenRevocationService;
+import se.jensen.linea.onsocial_app.service.RefreshTokenService;
 import se.jensen.linea.onsocial_app.service.TokenService;
+import se.jensen.linea.onsocial_app.service.UserAvailabilityService;
 import se.jensen.linea.onsocial_app.service.UserService;
 
 /**
@@ -34,17 +38,26 @@ public class AuthController {
 
     private final AuthenticationManager authenticationManager;
     private final UserService userService;
-    private final CustomUserDetailsService customUserDetailsService;
+    private final UserAvailabilityService userAvailabilityService;
     private final TokenService tokenService;
+    private final UserMapper userMapper;
+    private final RefreshTokenService refreshTokenService;
+    private final TokenRevocationService tokenRevocationService;
 
     public AuthController(AuthenticationManager authenticationManager,
                           UserService userService,
-                          CustomUserDetailsService customUserDetailsService,
-                          TokenService tokenService) {
+                          UserAvailabilityService userAvailabilityService,
+                          TokenService tokenService,
+                          UserMapper userMapper,
+                          RefreshTokenService refreshTokenService,
+                          TokenRevocationService tokenRevocationService) {
         this.authenticationManager = authenticationManager;
         this.userService = userService;
-        this.customUserDetailsService = customUserDetailsService;
+        this.userAvailabilityService = userAvailabilityService;
         this.tokenService = tokenService;
+        this.userMapper = userMapper;
+        this.refreshTokenService = refreshTokenService;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     /**
@@ -91,23 +104,53 @@ public class AuthController {
         // Generate JWT token
         String jwt = tokenService.generateToken(auth);
 
-        // Get user details from Authentication object
+        // The user loaded during authentication, no second lookup
         CustomUserDetails customUserDetails = (CustomUserDetails) auth.getPrincipal();
-        UserResponseDTO userResponse = userService.getUserByIdOrThrow(customUserDetails.getId());
+        UserResponseDTO userResponse = userMapper.userToDTO(customUserDetails.getUser());
 
-        // Return token and user info (frontend will save to localStorage)
-        return ResponseEntity.ok(new LoginResponseDTO(jwt, userResponse));
+        String refreshToken = refreshTokenService.issue(customUserDetails.getId());
+
+        // Return tokens and user info (frontend will save to localStorage)
+        return ResponseEntity.ok(new LoginResponseDTO(jwt, userResponse, refreshToken));
+    }
+
+    /**
+     * Hämta en ny JWT-token med en refresh token, utan att logga in med lösenord igen.
+     * Refresh token byts samtidigt mot en ny. Används en gammal refresh token igen
+     * spärras hela inloggningen och användaren måste logga in på nytt.
+     *
+     * @param refreshRequest Refresh token från inloggningen eller senaste anropet hit.
+     * @return HTTP 200 (ok) och en TokenResponseDTO med ny JWT-token och ny refresh token.
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<TokenResponseDTO> refresh(@Valid @RequestBody RefreshRequestDTO refreshRequest) {
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(refreshRequest.refreshToken());
+
+        String jwt = tokenService.generateToken(new CustomUserDetails(rotation.user()));
+
+        return ResponseEntity.ok(new TokenResponseDTO(jwt, rotation.refreshToken()));
     }
 
     /**
      * Loggar ut användaren.
-     * Eftersom JWT-tokens är stateless (servern sparar ingen session) hanteras
-     * själva utloggningen i frontend genom att ta bort token från localStorage.
+     * JWT-token som skickas med i Authorization spärras tills den går ut, så att en stulen token
+     * inte kan användas efter utloggningen. Skickas en refresh token med spärras den också,
+     * så att inloggningen inte kan förlängas.
      *
+     * @param authentication Inloggningen från JWT-token, null om ingen token skickades.
+     * @param refreshRequest Refresh token att spärra (valfri).
      * @return HTTP 204 (no content) som bekräftar att utloggningen lyckades.
      */
     @PostMapping("/logout")
-    public ResponseEntity<Void> logout() {
+    public ResponseEntity<Void> logout(Authentication authentication,
+                                       @RequestBody(required = false) RefreshRequestDTO refreshRequest) {
+        if (authentication != null && authentication.getCredentials() instanceof Jwt jwt
+                && jwt.getId() != null && jwt.getExpiresAt() != null) {
+            tokenRevocationService.revoke(jwt.getId(), jwt.getExpiresAt());
+        }
+        if (refreshRequest != null && refreshRequest.refreshToken() != null && !refreshRequest.refreshToken().isBlank()) {
+            refreshTokenService.revoke(refreshRequest.refreshToken());
+        }
         // Frontend handles token-removal from localStorage
         return ResponseEntity.noContent().build();
     }
@@ -121,7 +164,7 @@ public class AuthController {
      */
     @GetMapping("/check-alias")
     public ResponseEntity<AvailabilityResponseDTO> checkAliasAvailable(@RequestParam String alias) {
-        boolean exists = customUserDetailsService.aliasExists(alias);
+        boolean exists = userAvailabilityService.isAliasTaken(alias);
         return ResponseEntity.ok(new AvailabilityResponseDTO(!exists));
     }
 
@@ -133,7 +176,7 @@ public class AuthController {
      */
     @GetMapping("/check-email")
     public ResponseEntity<AvailabilityResponseDTO> checkEmailAvailable(@RequestParam String email) {
-        boolean exists = customUserDetailsService.emailExists(email);
+        boolean exists = userAvailabilityService.isEmailTaken(email);
         return ResponseEntity.ok(new AvailabilityResponseDTO(!exists));
     }
 }
\ No newline at end of file
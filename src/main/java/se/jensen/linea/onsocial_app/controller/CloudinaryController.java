@@ -1,19 +1,36 @@
 package se.jensen.linea.onsocial_app.controller;
 
-import com.cloudinary.Cloudinary;
-import com.cloudinary.utils.ObjectUtils;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import se.jensen.linea.onsocial_app.DTO.ProfilePictureDTO;
+import se.jensen.linea.onsocial_app.DTO.UploadJobDTO;
+import se.jensen.linea.onsocial_app.service.ProfilePictureService;
+import se.jensen.linea.onsocial_app.service.UploadJobService;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
 
 /**
- * RestController som hanterar uppladdning av bilder till Cloudinary.
- * Klassen tar emot bilder från frontend, laddar upp dem till molnet och returnerar en URL som kan sparas i databasen.
+ * RestController som hanterar uppladdning av bilder.
+ * Klassen tar emot bilder från frontend, förminskar dem och skapar miniatyrer (ProfilePictureService),
+ * sparar dem via MediaStorage (Cloudinary eller lokal disk, se media.storage) och returnerar en URL
+ * som kan sparas i databasen.
  * <p>
  * Har två endpoints: en publik för registrering och en skyddad för inloggade användare.
+ * <p>
+ * Bilden läses aldrig in i minnet i sin helhet. Multipart-filen sparas på disk (över
+ * spring.servlet.multipart.file-size-threshold) och lagringen läser direkt från filen,
+ * med en buffert av fast storlek. Minnet per uppladdning är därför detsamma oavsett bildens storlek.
+ * <p>
+ * Med async=true väntar anropet inte på bearbetningen och lagringen. Svaret (HTTP 202) kommer så fort bilden är sparad
+ * på disk, med ett jobb-id vars status hämtas från /upload/jobs/{id} (se UploadJobService).
  *
  * @author Simeon
  * Dokumenterad: 2026-01-22
@@ -23,62 +40,127 @@ import java.util.Map;
 @CrossOrigin(origins = "http://localhost:5174")
 public class CloudinaryController {
 
-    @Autowired
-    private Cloudinary cloudinary;
+    private static final Logger log = LoggerFactory.getLogger(CloudinaryController.class);
+
+    private final ProfilePictureService profilePictureService;
+    private final UploadJobService uploadJobService;
+
+    public CloudinaryController(ProfilePictureService profilePictureService, UploadJobService uploadJobService) {
+        this.profilePictureService = profilePictureService;
+        this.uploadJobService = uploadJobService;
+    }
 
     /**
      * Publik endpoint för bilduppladdning vid registrering.
      * Kräver ingen autentisering så användaren kan ladda upp sin profilbild
      * innan de är inloggade.
      *
-     * @param file bildfilen som ska laddas upp (kommer från frontend)
-     * @return URL till den uppladdade bilden eller felmeddelande.
+     * @param file  bildfilen som ska laddas upp (kommer från frontend)
+     * @param async true för att ladda upp i bakgrunden och svara med ett jobb direkt.
+     * @return URL till den uppladdade bilden eller felmeddelande, med async HTTP 202 och jobbet.
+     * @throws IOException om bilden inte kunde sparas på disk (bara med async).
      */
     @PostMapping("/public/image")
-    public ResponseEntity<?> uploadPublicImage(@RequestParam("file") MultipartFile file) {
-        return uploadImage(file);
+    public ResponseEntity<?> uploadPublicImage(@RequestParam("file") MultipartFile file,
+                                               @RequestParam(defaultValue = "false") boolean async) throws IOException {
+        return async ? uploadImageAsync(file) : uploadImage(file);
     }
 
     /**
      * Skyddad endpoint för bilduppladdning (kräver JWT-token).
      * Används när inloggade användaren vill uppdatera sin profilbild.
      *
-     * @param file bildfilen som ska laddas upp.
-     * @return URL till den uppladdade bilden eller felmeddelande.
+     * @param file  bildfilen som ska laddas upp.
+     * @param async true för att ladda upp i bakgrunden och svara med ett jobb direkt.
+     * @return URL till den uppladdade bilden eller felmeddelande, med async HTTP 202 och jobbet.
+     * @throws IOException om bilden inte kunde sparas på disk (bara med async).
      */
     @PostMapping("/auth/image")
-    public ResponseEntity<?> uploadAuthImage(@RequestParam("file") MultipartFile file) {
-        return uploadImage(file);
+    public ResponseEntity<?> uploadAuthImage(@RequestParam("file") MultipartFile file,
+                                             @RequestParam(defaultValue = "false") boolean async) throws IOException {
+        return async ? uploadImageAsync(file) : uploadImage(file);
     }
 
     /**
-     * Hjälpmetod som utför uppladdningen till Cloudinary.
-     * Laddar upp bilden till mappen "profile_pictures" och returnerar en URL som kan sparas i databasen.
+     * Hämta status för en uppladdning som körs i bakgrunden.
+     * Publik, eftersom uppladdningen vid registrering sker innan användaren är inloggad.
+     * Jobb-id:t är slumpat och går inte att gissa.
      *
-     * @param file bildfilen som ska laddas upp.
-     * @return JSON med URL vid lyckad uppladdning eller felmeddelande.
+     * @param id jobbets id från svaret på uppladdningen.
+     * @return HTTP 200 med jobbets status och URL när den är klar, 404 om jobbet inte finns.
      */
-    private ResponseEntity<?> uploadImage(MultipartFile file) {
-        System.out.println("========== UPLOAD ENDPOINT HIT ==========");
-        System.out.println("File: " + file.getOriginalFilename());
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<UploadJobDTO> getUploadJob(@PathVariable String id) {
+        return uploadJobService.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 
+    /**
+     * Hjälpmetod som bearbetar och sparar bilden via ProfilePictureService.
+     * Sparar bilden i mappen "profile_pictures" och returnerar en URL som kan sparas i databasen,
+     * samt URL:er till miniatyrerna per storlek.
+     * Filen flyttas till en egen temporär fil som bearbetningen läser från, istället för file.getBytes().
+     *
+     * @param file bildfilen som ska laddas upp.
+     * @return JSON med URL och miniatyrer vid lyckad uppladdning, annars felmeddelande
+     * (HTTP 400 om filen inte är en bild som går att läsa).
+     */
+    ResponseEntity<?> uploadImage(MultipartFile file) {
+        Path upload = null;
         try {
-            Map uploadResult = cloudinary.uploader().upload(
-                    file.getBytes(),
-                    ObjectUtils.asMap(
-                            "folder", "profile_pictures",
-                            "resource_type", "auto"
-                    )
-            );
-
-            String imageUrl = (String) uploadResult.get("secure_url");
-            System.out.println("Upload successful: " + imageUrl);
-            return ResponseEntity.ok(Map.of("url", imageUrl));
+            upload = spool(file);
+            ProfilePictureDTO picture = profilePictureService.upload(upload);
+            return ResponseEntity.ok(Map.of("url", picture.url(), "variants", picture.variants()));
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Upload failed: " + e.getMessage()));
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Upload of {} failed", file.getOriginalFilename(), e);
             return ResponseEntity.status(500)
                     .body(Map.of("error", "Upload failed: " + e.getMessage()));
+        } finally {
+            deleteQuietly(upload);
+        }
+    }
+
+    /**
+     * Hjälpmetod som sparar bilden på disk och lämnar över den till UploadJobService.
+     * Anropets tråd är ledig igen innan bilden har bearbetats och lagringen har svarat.
+     *
+     * @param file bildfilen som ska laddas upp.
+     * @return HTTP 202 med jobbet och dess status-URL i Location.
+     * @throws IOException om bilden inte kunde sparas på disk.
+     */
+    private ResponseEntity<UploadJobDTO> uploadImageAsync(MultipartFile file) throws IOException {
+        UploadJobDTO job = uploadJobService.submit(spool(file));
+        return ResponseEntity
+                .accepted()
+                .location(URI.create("/upload/jobs/" + job.id()))
+                .body(job);
+    }
+
+    // A part spooled to disk is moved, not copied, a small part held in memory is written out
+    private static Path spool(MultipartFile file) throws IOException {
+        Path upload = Files.createTempFile("upload-", ".tmp");
+        try {
+            file.transferTo(new File(upload.toString()));
+            return upload;
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(upload);
+            throw e;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete temporary upload {}", path, e);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package se.jensen.linea.onsocial_app.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import se.jensen.linea.onsocial_app.security.JwtKeyRing;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * JwksController publicerar de publika nycklar som våra JWT-token verifieras med (JWK Set).
+ * Andra tjänster kan då verifiera våra token själva och välja nyckel utifrån kid,
+ * även under ett nyckelbyte när flera nycklar är i bruk.
+ */
+@RestController
+public class JwksController {
+
+    private final JwtKeyRing jwtKeyRing;
+
+    public JwksController(JwtKeyRing jwtKeyRing) {
+        this.jwtKeyRing = jwtKeyRing;
+    }
+
+    /**
+     * Hämta alla publika nycklar.
+     *
+     * @return HTTP 200 (ok) och ett JWK Set utan privata nycklar.
+     */
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> getJwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(5)).cachePublic())
+                .body(jwtKeyRing.toPublicJwkSet().toJSONObject());
+    }
+}
@@ -1,18 +1,37 @@
 package se.jensen.linea.onsocial_app.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import se.jensen.linea.onsocial_app.DTO.CursorPageDTO;
+import se.jensen.linea.onsocial_app.DTO.PostBatchRequestDTO;
 import se.jensen.linea.onsocial_app.DTO.PostRequestDTO;
 import se.jensen.linea.onsocial_app.DTO.PostResponseDTO;
+import se.jensen.linea.onsocial_app.mapper.PostMapper;
+import se.jensen.linea.onsocial_app.repository.PostListStamp;
 import se.jensen.linea.onsocial_app.security.CustomUserDetails;
-import se.jensen.linea.onsocial_app.security.CustomUserDetailsService;
+import se.jensen.linea.onsocial_app.service.PostFeedService;
 import se.jensen.linea.onsocial_app.service.PostService;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectWriter;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * PostController hanterar klientens "requests" till /posts.
@@ -29,51 +48,134 @@ import java.util.List;
 public class PostController {
 
     private final PostService postService;
-    private final CustomUserDetailsService customUserDetailsService;
+    private final PostFeedService postFeedService;
+    private final ObjectWriter jsonWriter;
 
-    public PostController(PostService postService, CustomUserDetailsService customUserDetailsService) {
+    public PostController(PostService postService,
+                          PostFeedService postFeedService,
+                          ObjectMapper objectMapper) {
         this.postService = postService;
-        this.customUserDetailsService = customUserDetailsService;
+        this.postFeedService = postFeedService;
+        this.jsonWriter = objectMapper.writer();
     }
 
     /**
-     * Hämta alla inlägg.
+     * Hämta flödet av inlägg, en sida i taget (nyaste först).
      *
-     * @return HTTP 200 (ok) och en lista av PostResponseDTO.
+     * @param limit Antal inlägg per sida (standard 20, max 100).
+     * @param next  Cursor från föregående svar för att hämta nästa sida.
+     * @return HTTP 200 (ok) och en sida av PostResponseDTO med cursor till nästa sida.
      */
     @GetMapping("/findall")
-    public ResponseEntity<List<PostResponseDTO>> findAll() {
-        List<PostResponseDTO> posts = postService.findAll();
+    public ResponseEntity<CursorPageDTO<PostResponseDTO>> findAll(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String next) {
+        CursorPageDTO<PostResponseDTO> posts = postService.findAll(limit, next);
         return ResponseEntity.ok(posts);
     }
 
+    /**
+     * Prenumerera på nya inlägg live via Server-Sent Events.
+     * Varje nytt inlägg skickas som en händelse med namnet "post" och en PostResponseDTO som JSON.
+     * Ersätter att klienten frågar /posts/findall med jämna mellanrum.
+     *
+     * @return En öppen SSE-ström.
+     */
+    @GetMapping(value = "/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter live() {
+        return postFeedService.subscribe();
+    }
+
+    /**
+     * Sök bland inläggen på titel och innehåll, bäst matchande först.
+     *
+     * @param q     Söktext.
+     * @param limit Antal träffar per sida (standard 20, max 100).
+     * @param next  Cursor från föregående svar för att hämta nästa sida.
+     * @return HTTP 200 (ok) och en sida av PostResponseDTO med cursor till nästa sida.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<CursorPageDTO<PostResponseDTO>> search(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String next) {
+        CursorPageDTO<PostResponseDTO> posts = postService.search(q, limit, next);
+        return ResponseEntity.ok(posts);
+    }
+
+    /**
+     * Exportera alla inlägg som newline-delimited JSON (ett inlägg per rad).
+     * Inläggen skrivs direkt till svaret medan de läses från databasen,
+     * så hela tabellen hålls aldrig i minnet.
+     *
+     * @param response HTTP-svaret som inläggen skrivs till.
+     * @throws IOException om klienten kopplar ner under exporten.
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public void exportPosts(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+
+        OutputStream out = new BufferedOutputStream(response.getOutputStream(), 64 * 1024);
+        postService.exportAll(post -> {
+            try {
+                out.write(jsonWriter.writeValueAsBytes(post));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        out.flush();
+    }
+
     /**
      * Hämta alla inlägg av en specifik användare.
      *
-     * @param user_id Användarens unika ID.
-     * @return HTTP 200 (ok) och en lista av PostResponseDTO eller HTTP 404 (not found).
+     * Svaret har en ETag baserad på antal inlägg, senaste ändring och författarens alias,
+     * så klienten kan fråga med If-None-Match och få HTTP 304 (not modified) om inget har ändrats.
+     *
+     * @param user_id    Användarens unika ID.
+     * @param webRequest Används för att jämföra ETag med klientens If-None-Match.
+     * @return HTTP 200 (ok) och en lista av PostResponseDTO, HTTP 304 (not modified) eller HTTP 404 (not found).
      */
     @GetMapping("/byuser/{user_id}")
-    public ResponseEntity<List<PostResponseDTO>> findByUser(@PathVariable Long user_id) {
-        List<PostResponseDTO> posts = postService.findAllByUserId(user_id);
+    public ResponseEntity<List<PostResponseDTO>> findByUser(@PathVariable Long user_id, WebRequest webRequest) {
+        // Cheap COUNT/MAX query first, the posts are only loaded if the client's copy is stale
+        PostListStamp stamp = postService.getStampByUserId(user_id);
 
-        if (posts.isEmpty()) {
+        if (stamp.count() == 0) {
             return ResponseEntity.notFound().build();
         }
 
-        return ResponseEntity.ok(posts);
+        String etag = listETag(stamp);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
+        List<PostResponseDTO> posts = postService.findAllByUserId(user_id);
+        return ResponseEntity.ok().eTag(etag).body(posts);
     }
 
     /**
      * Hitta ett specifikt inlägg med ett ID.
+     * Svaret har en ETag baserad på inläggets version och författarens alias. Om klienten skickar samma ETag i
+     * If-None-Match svarar vi HTTP 304 (not modified) utan body.
      *
-     * @param post_id Inläggets unika ID.
-     * @return HTTP 200 (ok) och en PostResponseDTO.
+     * @param post_id    Inläggets unika ID.
+     * @param webRequest Används för att jämföra ETag med klientens If-None-Match.
+     * @return HTTP 200 (ok) och en PostResponseDTO, eller HTTP 304 (not modified).
      */
     @GetMapping("/specific/{post_id}")
-    public ResponseEntity<PostResponseDTO> getPostById(@PathVariable Long post_id) {
+    public ResponseEntity<PostResponseDTO> getPostById(@PathVariable Long post_id, WebRequest webRequest) {
         PostResponseDTO post = postService.findById(post_id);
-        return ResponseEntity.ok(post);
+
+        String etag = versionETag(post);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
+        return ResponseEntity.ok().eTag(etag).body(post);
     }
 
     /**
@@ -89,33 +191,57 @@ public class PostController {
             @Valid @RequestBody PostRequestDTO postDto,
             Authentication authentication) {
 
-        // Get username from JWT token
-        String username = authentication.getName();
-
-        // Load full user details
-        CustomUserDetails userDetails = (CustomUserDetails) customUserDetailsService.loadUserByUsername(username);
+        // Built from the JWT claims in SecurityConfig, no database lookup
+        CustomUserDetails userDetails = (CustomUserDetails) authentication.getPrincipal();
 
-        Long userId = userDetails.getId();
-        PostResponseDTO createdPost = postService.createPost(userId, postDto);
+        PostResponseDTO createdPost = postService.createPost(userDetails.getId(), userDetails.getUsername(), postDto);
 
         return ResponseEntity.status(HttpStatus.CREATED).body(createdPost);
     }
 
+    /**
+     * Skapa flera inlägg i ett anrop, t.ex. vid import.
+     * Inläggen sparas i batchar.
+     *
+     * @param batchDto       Inläggen som ska skapas (max 500).
+     * @param authentication Innehåller information om den inloggade användaren, tack vare SecurityConfig.
+     * @return HTTP 201 (created) och en lista av PostResponseDTO.
+     */
+    @PostMapping("/add/batch")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<List<PostResponseDTO>> addPosts(
+            @Valid @RequestBody PostBatchRequestDTO batchDto,
+            Authentication authentication) {
+
+        CustomUserDetails userDetails = (CustomUserDetails) authentication.getPrincipal();
+
+        List<PostResponseDTO> createdPosts = postService.createPosts(
+                userDetails.getId(), userDetails.getUsername(), batchDto.posts());
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(createdPosts);
+    }
+
     /**
      * Uppdaterar ett inlägg.
      *
+     * Om klienten skickar If-Match med inläggets ETag uppdateras inlägget bara om det inte
+     * har ändrats sedan klienten läste det, annars HTTP 412 (precondition failed).
+     * If-Match: * uppdaterar inlägget oavsett version.
+     *
      * @param id             Inläggets ID.
      * @param postRequestDTO Vi hämtar data från klienten via PostRequestDTO.
-     * @return HTTP 200 (ok) och en PostResponseDTO.
+     * @param ifMatch        ETag som klienten senast läste, valfri.
+     * @return HTTP 200 (ok) och en PostResponseDTO med ny ETag.
      */
     @PutMapping("/update/{id}")
     @PreAuthorize("@postSecurityService.isPostOwner(#id, authentication) or hasRole('ADMIN')")
     public ResponseEntity<PostResponseDTO> updatePost(
             @PathVariable Long id,
-            @Valid @RequestBody PostRequestDTO postRequestDTO) {
+            @Valid @RequestBody PostRequestDTO postRequestDTO,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
-        PostResponseDTO updatedPost = postService.updatePost(id, postRequestDTO);
-        return ResponseEntity.ok(updatedPost);
+        PostResponseDTO updatedPost = postService.updatePost(id, postRequestDTO, parseIfMatch(ifMatch));
+        return ResponseEntity.ok().eTag(versionETag(updatedPost)).body(updatedPost);
     }
 
     /**
@@ -135,4 +261,59 @@ public class PostController {
             return ResponseEntity.notFound().build();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Stark ETag för ett enskilt inlägg, baserad på dess version och författarens alias.
+     *
+     * @param post Inlägget.
+     * @return ETag inom citattecken, t.ex. "3-6c1f2a".
+     */
+    private static String versionETag(PostResponseDTO post) {
+        return "\"" + PostMapper.versionTag(post.version(), post.userAlias()) + "\"";
+    }
+
+    /**
+     * ETag för en lista av inlägg, baserad på antal, senaste ändring och författarens alias.
+     *
+     * @param stamp Sammanfattning av listan.
+     * @return ETag inom citattecken.
+     */
+    private static String listETag(PostListStamp stamp) {
+        Instant lastModified = stamp.lastModified();
+        long micros = lastModified == null
+                ? 0
+                : lastModified.getEpochSecond() * 1_000_000 + lastModified.getNano() / 1_000;
+        return "\"" + stamp.count() + "-" + micros + "-" + PostMapper.aliasHash(stamp.userAlias()) + "\"";
+    }
+
+    /**
+     * Läser ut ETag-värdena ur en If-Match header.
+     * <p>
+     * If-Match jämförs strikt (RFC 9110), så en svag ETag som W/"3-6c1f2a" matchar aldrig. Headern kan
+     * innehålla flera ETags separerade med kommatecken, inlägget uppdateras om någon av dem matchar.
+     *
+     * @param ifMatch Headerns värde, t.ex. "3-6c1f2a", en lista av ETags eller *.
+     * @return Godtagna värden utan citattecken (tom om ingen kan matcha), eller null om headern saknas eller är "*".
+     * @throws IllegalArgumentException om headern inte innehåller någon ETag.
+     */
+    private static Set<String> parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank()) {
+            return null;
+        }
+        List<ETag> etags = ETag.parse(ifMatch);
+        if (etags.isEmpty()) {
+            throw new IllegalArgumentException("Invalid If-Match header");
+        }
+        Set<String> tags = new HashSet<>();
+        for (ETag etag : etags) {
+            if (etag.isWildcard()) {
+                // Any current version matches, the post only has to exist
+                return null;
+            }
+            if (!etag.weak()) {
+                tags.add(etag.tag());
+            }
+        }
+        return tags;
+    }
+}
@@ -4,8 +4,11 @@ import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import se.jensen.linea.onsocial_app.DTO.AliasSuggestionDTO;
+import se.jensen.linea.onsocial_app.DTO.CursorPageDTO;
 import se.jensen.linea.onsocial_app.DTO.UserRequestDTO;
 import se.jensen.linea.onsocial_app.DTO.UserResponseDTO;
+import se.jensen.linea.onsocial_app.service.AliasAutocompleteService;
 import se.jensen.linea.onsocial_app.service.UserService;
 
 import java.util.List;
@@ -25,22 +28,58 @@ import java.util.List;
 public class UserController {
 
     private final UserService userService;
+    private final AliasAutocompleteService aliasAutocompleteService;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, AliasAutocompleteService aliasAutocompleteService) {
         this.userService = userService;
+        this.aliasAutocompleteService = aliasAutocompleteService;
     }
 
     /**
-     * Hämta alla användare.
+     * Hämta användarkatalogen, en sida i taget sorterad på alias.
      *
-     * @return HTTP 200 (ok) och en lista av UserResponseDTO.
+     * @param alias Visa bara användare vars alias börjar med detta (valfritt).
+     * @param limit Antal användare per sida (standard 20, max 100).
+     * @param next  Cursor från föregående svar för att hämta nästa sida.
+     * @return HTTP 200 (ok) och en sida av UserResponseDTO med cursor till nästa sida.
      */
     @GetMapping("/find_all")
-    public ResponseEntity<List<UserResponseDTO>> getAllUsers() {
-        List<UserResponseDTO> users = userService.getAllUsers();
+    public ResponseEntity<CursorPageDTO<UserResponseDTO>> getAllUsers(
+            @RequestParam(required = false) String alias,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String next) {
+        CursorPageDTO<UserResponseDTO> users = userService.findUsers(alias, limit, next);
         return ResponseEntity.ok(users);
     }
 
+    /**
+     * Förslag på alias för @mentions medan användaren skriver, besvaras från minnet.
+     *
+     * @param prefix Det som har skrivits efter @, versaler spelar ingen roll.
+     * @param limit  Antal förslag (standard 10, max 50).
+     * @return HTTP 200 (ok) och en lista av AliasSuggestionDTO i bokstavsordning.
+     */
+    @GetMapping("/autocomplete")
+    public ResponseEntity<List<AliasSuggestionDTO>> autocomplete(
+            @RequestParam(required = false) String prefix,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(aliasAutocompleteService.complete(prefix, limit));
+    }
+
+    /**
+     * Sök användare på alias, även med stavfel eller del av alias.
+     *
+     * @param q     Söktext.
+     * @param limit Antal träffar (standard 10, max 50).
+     * @return HTTP 200 (ok) och en lista av AliasSuggestionDTO, bästa träffar först.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<AliasSuggestionDTO>> search(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(aliasAutocompleteService.search(q, limit));
+    }
+
     /**
      * Hämta en användare med ett ID.
      *
@@ -55,6 +94,8 @@ public class UserController {
 
     /**
      * Uppdatera en användare.
+     * Token innehåller aliaset, så efter ett byte av alias bör klienten hämta en ny token via /auth/refresh
+     * (se SecurityConfig.jwtAuthenticationConverter).
      *
      * @param id             Användarens ID.
      * @param userRequestDTO Informationen som ska uppdateras.
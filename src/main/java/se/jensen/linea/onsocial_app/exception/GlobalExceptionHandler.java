@@ -1,5 +1,9 @@
 package se.jensen.linea.onsocial_app.exception;
 
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -7,8 +11,10 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import se.jensen.linea.onsocial_app.model.User;
 
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -64,6 +70,71 @@ public class GlobalExceptionHandler {
                 .body(Map.of("error", ex.getMessage()));
     }
 
+    /**
+     * Hanterar fel när ett inlägg har ändrats av någon annan (If-Match stämmer inte eller samtidig uppdatering).
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<Map<String, String>> handleOptimisticLocking(OptimisticLockingFailureException ex) {
+        return ResponseEntity
+                .status(HttpStatus.PRECONDITION_FAILED)
+                .body(Map.of("error", "Post has been modified, please reload and try again"));
+    }
+
+    /**
+     * Hanterar överbelastning av lösenordshashningen, klienten får försöka igen efter Retry-After.
+     */
+    @ExceptionHandler(PasswordHashingBusyException.class)
+    public ResponseEntity<Map<String, String>> handlePasswordHashingBusy(PasswordHashingBusyException ex) {
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, ex.getRetryAfter().toSeconds())))
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    /**
+     * Hanterar full kö för bilduppladdningar i bakgrunden, klienten får försöka igen efter Retry-After.
+     */
+    @ExceptionHandler(UploadBusyException.class)
+    public ResponseEntity<Map<String, String>> handleUploadBusy(UploadBusyException ex) {
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, ex.getRetryAfter().toSeconds())))
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    /**
+     * Hanterar brott mot databasens villkor, t.ex. dubbletter av alias/email vid registrering.
+     * Namnet på unik-villkoret avgör vilket fält som redan finns (se User.ALIAS_CONSTRAINT och EMAIL_CONSTRAINT).
+     * Andra villkor ger ett allmänt meddelande, så att SQL aldrig visas för klienten.
+     */
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<Map<String, String>> handleDataIntegrityViolation(DataIntegrityViolationException ex) {
+        String constraint = constraintName(ex);
+        if (constraint.contains(User.ALIAS_CONSTRAINT)) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", "Alias already exists"));
+        }
+        if (constraint.contains(User.EMAIL_CONSTRAINT)) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", "E-mail already exists"));
+        }
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body(Map.of("error", "The request conflicts with existing data"));
+    }
+
+    // Hibernate extracts the constraint name from the driver's error, e.g. "uk_users_alias" on PostgreSQL
+    private static String constraintName(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null) {
+                return violation.getConstraintName().toLowerCase(Locale.ROOT);
+            }
+        }
+        return "";
+    }
+
     /**
      * Hanterar felaktiga argument (t.ex. saknad token).
      */
@@ -75,7 +146,7 @@ public class GlobalExceptionHandler {
     }
 
     /**
-     * Hanterar körtidsundantag (t.ex. dubbletter av alias/email)
+     * Hanterar körtidsundantag (t.ex. användare som inte finns)
      */
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<Map<String, String>> handleRuntimeException(RuntimeException ex) {
@@ -0,0 +1,21 @@
+package se.jensen.linea.onsocial_app.exception;
+
+import java.time.Duration;
+
+/**
+ * Kastas när kön för bilduppladdningar i bakgrunden är full.
+ * GlobalExceptionHandler svarar då med HTTP 503 och Retry-After, så att klienten försöker igen lite senare.
+ */
+public class UploadBusyException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public UploadBusyException(Duration retryAfter) {
+        super("Too many uploads right now, please try again shortly");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,129 @@
+package se.jensen.linea.onsocial_app.mapper;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Mapper-klass som omvandlar en position i ett sorterat resultat till en opak cursor och tillbaka.
+ * Cursorn innehåller sorteringsnyckeln (t.ex. created_at och id) för den sista raden på en sida,
+ * så att nästa sida kan hämtas med en seek-fråga istället för OFFSET.
+ * <p>
+ * Klienten ska inte tolka cursorn, den är bara Base64-kodad för att hållas opak.
+ */
+public class CursorMapper {
+
+    /**
+     * Avkodad cursor.
+     *
+     * @param created Tidsstämpeln för sista raden på föregående sida.
+     * @param id      ID för sista raden på föregående sida.
+     */
+    public record Cursor(Instant created, Long id) {
+    }
+
+    /**
+     * Avkodad cursor för resultat sorterade på rank (t.ex. fulltextsökning).
+     *
+     * @param rank Rank för sista raden på föregående sida.
+     * @param id   ID för sista raden på föregående sida.
+     */
+    public record RankCursor(float rank, Long id) {
+    }
+
+    /**
+     * Skapar en opak cursor från sorteringsnyckeln.
+     *
+     * @param created Tidsstämpeln för sista raden.
+     * @param id      ID för sista raden.
+     * @return En URL-säker cursor-sträng.
+     */
+    public static String encode(Instant created, Long id) {
+        String raw = created.getEpochSecond() + ":" + created.getNano() + ":" + id;
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Läser tillbaka sorteringsnyckeln från en cursor.
+     *
+     * @param cursor Cursorn som klienten skickade.
+     * @return Den avkodade cursorn.
+     * @throws IllegalArgumentException om cursorn inte är giltig.
+     */
+    public static Cursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            Instant created = Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            return new Cursor(created, Long.parseLong(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    /**
+     * Skapar en opak cursor från rank och id.
+     *
+     * @param rank Rank för sista raden.
+     * @param id   ID för sista raden.
+     * @return En URL-säker cursor-sträng.
+     */
+    public static String encodeRank(float rank, Long id) {
+        String raw = Float.toString(rank) + ":" + id;
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Läser tillbaka rank och id från en cursor.
+     *
+     * @param cursor Cursorn som klienten skickade.
+     * @return Den avkodade cursorn.
+     * @throws IllegalArgumentException om cursorn inte är giltig.
+     */
+    public static RankCursor decodeRank(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new RankCursor(Float.parseFloat(parts[0]), Long.parseLong(parts[1]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    /**
+     * Skapar en opak cursor från ett alias, för listor sorterade på alias.
+     *
+     * @param alias Alias för sista raden.
+     * @return En URL-säker cursor-sträng.
+     */
+    public static String encodeAlias(String alias) {
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(alias.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Läser tillbaka aliaset från en cursor.
+     *
+     * @param cursor Cursorn som klienten skickade.
+     * @return Alias för sista raden på föregående sida.
+     * @throws IllegalArgumentException om cursorn inte är giltig.
+     */
+    public static String decodeAlias(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -43,13 +43,51 @@ public class PostMapper {
      * @return en DTO med den information klienten behöver
      */
     public static PostResponseDTO toDTO(Post post) {
+        return toDTO(post, post.getUser().getAlias());
+    }
+
+    /**
+     * Skapar en PostResponseDTO när användarens alias redan är känt.
+     * Används när inlägget bara har en referens till användaren (getReferenceById),
+     * så att användaren inte läses från databasen för att hämta alias.
+     *
+     * @param post      Post-entity som ska omvandlas
+     * @param userAlias användarens alias
+     * @return en DTO med den information klienten behöver
+     */
+    public static PostResponseDTO toDTO(Post post, String userAlias) {
         return new PostResponseDTO(
                 post.getId(),
                 post.getTitle(),
                 post.getContent(),
                 post.getUser().getId(),
-                post.getUser().getAlias(),
-                post.getCreated()
+                userAlias,
+                post.getCreated(),
+                post.getVersion()
         );
     }
+
+    /**
+     * Värdet i ett inläggs ETag (utan citattecken), t.ex. "3-6c1f2a".
+     * Består av inläggets version och en hash av författarens alias, eftersom aliaset ingår i svaret
+     * men inte ändrar inläggets version när användaren byter alias.
+     *
+     * @param version   Inläggets version.
+     * @param userAlias Författarens alias.
+     * @return Värdet för ETag.
+     */
+    public static String versionTag(Long version, String userAlias) {
+        return version + "-" + aliasHash(userAlias);
+    }
+
+    /**
+     * Kort hash av ett alias för ETags. String.hashCode är definierad i språket och ger samma värde
+     * i alla instanser och versioner av JVM:en.
+     *
+     * @param userAlias Författarens alias, eller null.
+     * @return Hashen i hex.
+     */
+    public static String aliasHash(String userAlias) {
+        return Integer.toHexString(userAlias == null ? 0 : userAlias.hashCode());
+    }
 }
@@ -0,0 +1,101 @@
+package se.jensen.linea.onsocial_app.mapper;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Mapper-klass som räknar fram URL:er till miniatyrerna av en profilbild från bildens URL.
+ * <p>
+ * En bearbetad profilbild sparas som "{id}.jpg" (eller .png) i mappen FOLDER och dess miniatyrer bredvid som
+ * "{id}_64.jpg" och "{id}_256.jpg", där id är 32 hexadecimala tecken. Därför räcker URL:en i
+ * users.profile_picture för att hitta miniatyrerna, oavsett lagring.
+ * <p>
+ * Miniatyrer räknas bara fram för URL:er under den konfigurerade lagringens bas-URL (media.storage),
+ * i mappen FOLDER. Äldre bilder och externa URL:er har inga miniatyrer, även om filnamnet råkar följa mönstret.
+ * <p>
+ * Storlekarna är en del av URL:erna och kan därför inte ändras utan att äldre bilder tappar sina miniatyrer.
+ */
+@Component
+public class ProfilePictureMapper {
+
+    /**
+     * Mappen som profilbilder sparas i.
+     */
+    public static final String FOLDER = "profile_pictures";
+
+    /**
+     * Miniatyrernas största sida i pixlar.
+     */
+    public static final List<Integer> THUMBNAIL_SIZES = List.of(64, 256);
+
+    // Cloudinary puts an optional version segment ("v1700000000/") between the base and the folder
+    private static final Pattern PROCESSED =
+            Pattern.compile("(v[0-9]+/)?" + FOLDER + "/([0-9a-f]{32})\\.(jpg|png)");
+
+    private final String baseUrl;
+
+    /**
+     * @param storage      Lagringen som används, "cloudinary" eller "local" (se MediaStorage).
+     * @param cloudName    Cloudinary-kontots namn.
+     * @param localBaseUrl Bas-URL:en för lokalt sparade filer.
+     */
+    public ProfilePictureMapper(@Value("${media.storage:cloudinary}") String storage,
+                                @Value("${cloudinary.cloud-name:}") String cloudName,
+                                @Value("${media.local.base-url:http://localhost:8080}") String localBaseUrl) {
+        this.baseUrl = "local".equals(storage)
+                ? (localBaseUrl.endsWith("/") ? localBaseUrl : localBaseUrl + "/") + "media/"
+                : "https://res.cloudinary.com/" + cloudName + "/image/upload/";
+    }
+
+    /**
+     * Filnamnet för en bearbetad profilbild.
+     *
+     * @param id        Bildens id (32 hexadecimala tecken).
+     * @param extension "jpg" eller "png".
+     * @return Filnamnet, t.ex. "{id}.jpg".
+     */
+    public static String imageName(String id, String extension) {
+        return id + "." + extension;
+    }
+
+    /**
+     * Filnamnet för en miniatyr av en bearbetad profilbild.
+     *
+     * @param id        Bildens id (32 hexadecimala tecken).
+     * @param size      Miniatyrens största sida, en av THUMBNAIL_SIZES.
+     * @param extension "jpg" eller "png".
+     * @return Filnamnet, t.ex. "{id}_64.jpg".
+     */
+    public static String thumbnailName(String id, int size, String extension) {
+        return id + "_" + size + "." + extension;
+    }
+
+    /**
+     * URL:er till miniatyrerna av en profilbild.
+     *
+     * @param profilePicture URL till profilbilden, kan vara null.
+     * @return Miniatyrernas URL per storlek (minsta först), tom om bilden inte har bearbetats av oss.
+     */
+    public Map<Integer, String> thumbnails(String profilePicture) {
+        if (profilePicture == null || !profilePicture.startsWith(baseUrl)) {
+            return Collections.emptyMap();
+        }
+        Matcher matcher = PROCESSED.matcher(profilePicture).region(baseUrl.length(), profilePicture.length());
+        if (!matcher.matches()) {
+            return Collections.emptyMap();
+        }
+        String prefix = profilePicture.substring(0, matcher.start(2));
+        Map<Integer, String> thumbnails = new LinkedHashMap<>();
+        for (int size : THUMBNAIL_SIZES) {
+            thumbnails.put(size, prefix + thumbnailName(matcher.group(2), size, matcher.group(3)));
+        }
+        return Collections.unmodifiableMap(thumbnails);
+    }
+}
@@ -15,6 +15,12 @@ import se.jensen.linea.onsocial_app.model.User;
 @Component
 public class UserMapper {
 
+    private final ProfilePictureMapper profilePictureMapper;
+
+    public UserMapper(ProfilePictureMapper profilePictureMapper) {
+        this.profilePictureMapper = profilePictureMapper;
+    }
+
     public User fromDto(UserRequestDTO userRequestDTO) {
         User user = new User();
         valuesToUser(user, userRequestDTO);
@@ -39,7 +45,20 @@ public class UserMapper {
                 user.getFirstName(),
                 user.getLastName(),
                 user.getProfilePicture(),
-                user.getRole()
+                user.getRole(),
+                profilePictureMapper.thumbnails(user.getProfilePicture())
         );
     }
+
+    /**
+     * Lägger till miniatyrerna av profilbilden i en UserResponseDTO från JPQL-projektionen
+     * (se ProfilePictureMapper).
+     *
+     * @param user Användaren utan miniatyrer.
+     * @return Samma användare med miniatyrernas URL:er.
+     */
+    public UserResponseDTO withProfilePictureVariants(UserResponseDTO user) {
+        return new UserResponseDTO(user.id(), user.alias(), user.email(), user.firstName(), user.lastName(),
+                user.profilePicture(), user.role(), profilePictureMapper.thumbnails(user.profilePicture()));
+    }
 }
@@ -1,6 +1,7 @@
 package se.jensen.linea.onsocial_app.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.Instant;
 
@@ -14,14 +15,27 @@ import java.time.Instant;
  * Dokumenterad: 2026-01-21
  */
 @Entity
-@Table(name = "posts")
+@Table(name = "posts", indexes = {
+        // Keyset-index för flödet, sorterat på (created_at, id)
+        @Index(name = "idx_posts_created_at_id", columnList = "created_at DESC, id DESC"),
+        // Index för inlägg per användare
+        @Index(name = "idx_posts_user_id", columnList = "user_id")
+})
 public class Post {
 
     /**
-     * Unikt ID för posten, genereras automatiskt av databasen.
+     * Antal ID:n som Hibernate reserverar från posts_seq åt gången.
+     * Bör vara minst lika stort som hibernate.jdbc.batch_size.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    /**
+     * Unikt ID för posten, hämtas från sekvensen posts_seq.
+     * En sekvens (istället för IDENTITY) gör att Hibernate kan skicka INSERT i batchar.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "posts_seq")
+    @SequenceGenerator(name = "posts_seq", sequenceName = "posts_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     /**
@@ -37,6 +51,22 @@ public class Post {
     @Column(name = "created_at", nullable = false)
     private Instant created;
 
+    /**
+     * Tidpunkt när posten senast ändrades, referens till databasens namn "updated_at".
+     * Används tillsammans med antal poster för att räkna fram ETag för listor.
+     */
+    @Column(name = "updated_at")
+    private Instant updated;
+
+    /**
+     * Versionsnummer för optimistisk låsning, ökas av Hibernate vid varje uppdatering.
+     * Används som ETag för posten. Befintliga rader får värdet 0.
+     */
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    private Long version = 0L;
+
     /**
      * Postens innehåll, referens till databasens namn "post_content", får inte vara tom.
      * Max längd 5000 ord (@Author Linea).
@@ -74,6 +104,15 @@ public class Post {
     @PrePersist
     protected void onCreate() {
         this.created = Instant.now();
+        this.updated = this.created;
+    }
+
+    /**
+     * När inlägget ändras uppdateras tidsstämpeln för senaste ändring.
+     */
+    @PreUpdate
+    protected void onUpdate() {
+        this.updated = Instant.now();
     }
 
 
@@ -99,6 +138,14 @@ public class Post {
     }
 
 
+    public Instant getUpdated() {
+        return updated;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
     public String getContent() {
         return content;
     }
@@ -0,0 +1,120 @@
+package se.jensen.linea.onsocial_app.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Klassen representerar en refresh token som klienten kan byta mot en ny access token
+ * utan att logga in med lösenord igen.
+ * <p>
+ * Själva token sparas aldrig, bara dess SHA-256-hash. Varje token kan användas en gång och byts
+ * då mot en ny i samma familj (rotation). Alla token från samma inloggning delar familj, så om
+ * en redan använd token dyker upp igen kan hela familjen spärras.
+ */
+@Entity
+@Table(name = "refresh_tokens", indexes = {
+        // Spärra alla token från samma inloggning
+        @Index(name = "idx_refresh_tokens_family_id", columnList = "family_id"),
+        // Rensning av utgångna token
+        @Index(name = "idx_refresh_tokens_expires_at", columnList = "expires_at")
+})
+public class RefreshToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * SHA-256-hash av token (Base64url), token i klartext sparas aldrig.
+     */
+    @Column(name = "token_hash", nullable = false, unique = true, length = 64)
+    private String tokenHash;
+
+    /**
+     * Id för inloggningen som token hör till, ärvs vid varje rotation.
+     */
+    @Column(name = "family_id", nullable = false)
+    private UUID familyId;
+
+    /**
+     * Användaren som token tillhör. Raderas användaren raderas även token (ON DELETE CASCADE).
+     */
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "user_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private User user;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant created;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    /**
+     * När token byttes mot en ny, null om den inte har använts.
+     */
+    @Column(name = "used_at")
+    private Instant usedAt;
+
+    /**
+     * När token spärrades (utloggning eller återanvändning), null om den inte är spärrad.
+     */
+    @Column(name = "revoked_at")
+    private Instant revokedAt;
+
+    // Constructors
+    public RefreshToken() {
+    }
+
+    public RefreshToken(String tokenHash, UUID familyId, User user, Instant expiresAt) {
+        this.tokenHash = tokenHash;
+        this.familyId = familyId;
+        this.user = user;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * När token skapas, så får vi en automatisk tidsstämpel.
+     */
+    @PrePersist
+    protected void onCreate() {
+        this.created = Instant.now();
+    }
+
+    // Getters
+    public Long getId() {
+        return id;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public UUID getFamilyId() {
+        return familyId;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public Instant getCreated() {
+        return created;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public Instant getUsedAt() {
+        return usedAt;
+    }
+
+    public Instant getRevokedAt() {
+        return revokedAt;
+    }
+}
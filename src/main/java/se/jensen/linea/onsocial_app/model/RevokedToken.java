@@ -0,0 +1,44 @@
+package se.jensen.linea.onsocial_app.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Klassen representerar en spärrad JWT access token, t.ex. efter utloggning.
+ * <p>
+ * Bara tokens id (claim "jti") och utgångstid sparas. Raden behövs bara tills token går ut,
+ * därefter avvisas token ändå och raden rensas bort.
+ */
+@Entity
+@Table(name = "revoked_tokens", indexes = {
+        // Loading and purging by expiry
+        @Index(name = "idx_revoked_tokens_expires_at", columnList = "expires_at")
+})
+public class RevokedToken {
+
+    @Id
+    @Column(name = "jti", length = 36)
+    private String jti;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    // Constructors
+    public RevokedToken() {
+    }
+
+    public RevokedToken(String jti, Instant expiresAt) {
+        this.jti = jti;
+        this.expiresAt = expiresAt;
+    }
+
+    // Getters
+    public String getJti() {
+        return jti;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
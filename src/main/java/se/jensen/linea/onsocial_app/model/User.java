@@ -13,9 +13,22 @@ import java.util.List;
  * Dokumenterad: 2026-01-21
  */
 @Entity
-@Table(name = "users")
+@Table(name = "users", uniqueConstraints = {
+        @UniqueConstraint(name = User.ALIAS_CONSTRAINT, columnNames = "alias"),
+        @UniqueConstraint(name = User.EMAIL_CONSTRAINT, columnNames = "email")
+})
 public class User {
 
+    /**
+     * Namnet på unik-villkoret för alias, används för att känna igen dubbletter (se GlobalExceptionHandler).
+     */
+    public static final String ALIAS_CONSTRAINT = "uk_users_alias";
+
+    /**
+     * Namnet på unik-villkoret för email, används för att känna igen dubbletter (se GlobalExceptionHandler).
+     */
+    public static final String EMAIL_CONSTRAINT = "uk_users_email";
+
     /**
      * Unikt ID för användaren, genereras automatiskt av databasen.
      * Referens till databasens namn "user_id".
@@ -39,16 +52,16 @@ public class User {
 
     /**
      * Användarens e-postadress.
-     * Måste vara unik (två användare kan inte ha samma e-postadress).
+     * Måste vara unik (två användare kan inte ha samma e-postadress), se EMAIL_CONSTRAINT.
      */
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String email;
 
     /**
      * Användarens användarnamn.
-     * Måste vara unik (två användare kan inte ha samma användarnamn).
+     * Måste vara unik (två användare kan inte ha samma användarnamn), se ALIAS_CONSTRAINT.
      */
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String alias;
 
     /**
@@ -71,10 +84,10 @@ public class User {
     /**
      * Lista över alla poster användaren har skapat.
      * En användare kan ha flera poster (One-to-Many relation).
-     * Om användaren tas bort, raderas alla poster automatiskt (CascadeType.REMOVE).
+     * Posterna raderas i omgångar av UserService.deleteUser när användaren tas bort,
+     * istället för CascadeType.REMOVE som laddar och raderar varje post för sig.
      */
-    @OneToMany(mappedBy = "user"
-            , cascade = CascadeType.REMOVE, fetch = FetchType.LAZY)
+    @OneToMany(mappedBy = "user", fetch = FetchType.LAZY)
     private List<Post> posts;
 
     //Constructors
@@ -0,0 +1,14 @@
+package se.jensen.linea.onsocial_app.repository;
+
+import java.time.Instant;
+
+/**
+ * Sammanfattning av en lista med inlägg, används för att räkna fram en ETag för listan.
+ * Ändras när ett inlägg skapas, uppdateras eller raderas, och när författaren byter alias.
+ *
+ * @param count        Antal inlägg i listan.
+ * @param lastModified Senaste tidpunkt då något inlägg i listan skapades eller ändrades, null om listan är tom.
+ * @param userAlias    Författarens alias, som ingår i varje inlägg i listan. Null om listan är tom.
+ */
+public record PostListStamp(long count, Instant lastModified, String userAlias) {
+}
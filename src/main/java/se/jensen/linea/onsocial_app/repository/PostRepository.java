@@ -1,19 +1,234 @@
 package se.jensen.linea.onsocial_app.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import se.jensen.linea.onsocial_app.DTO.PostResponseDTO;
 import se.jensen.linea.onsocial_app.model.Post;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * PostRepository ärver metoder från Spring Data JPA.
  * Med "extends JpaRepository" undviker vi boilerplate-kod och ärver:
  * save(), findAll(), findById() osv.
  * Vi får alltså färdiga metoder för att kommunicera med databasen.
+ * <p>
+ * Läsmetoderna bygger PostResponseDTO direkt i frågan (projektion) med en JOIN mot users,
+ * så att författarens alias inte behöver laddas med en extra SELECT per inlägg.
  *
  * @author Simeon
  * Dokumenterad: 2026-01-22
  */
 public interface PostRepository extends JpaRepository<Post, Long> {
-    List<Post> findByUserId(Long userId);
+
+    /**
+     * Antal rader som JDBC-drivern hämtar per omgång vid export.
+     */
+    String EXPORT_FETCH_SIZE = "500";
+
+    /**
+     * Första sidan av flödet, nyaste inlägg först.
+     *
+     * @param limit Max antal rader som hämtas.
+     * @return Lista av PostResponseDTO sorterade på (created_at, id) fallande.
+     */
+    @Query("""
+            SELECT new se.jensen.linea.onsocial_app.DTO.PostResponseDTO(
+                p.id, p.title, p.content, u.id, u.alias, p.created, p.version)
+            FROM Post p JOIN p.user u
+            ORDER BY p.created DESC, p.id DESC
+            """)
+    List<PostResponseDTO> findFeed(Limit limit);
+
+    /**
+     * Nästa sida av flödet efter en given position (seek-fråga, ingen OFFSET).
+     * Kostar lika mycket oavsett hur långt in i flödet klienten har bläddrat,
+     * eftersom indexet på (created_at, id) används för att hoppa direkt till positionen.
+     *
+     * @param created Tidsstämpeln för sista inlägget på föregående sida.
+     * @param id      ID för sista inlägget på föregående sida.
+     * @param limit   Max antal rader som hämtas.
+     * @return Lista av PostResponseDTO äldre än positionen, sorterade på (created_at, id) fallande.
+     */
+    @Query("""
+            SELECT new se.jensen.linea.onsocial_app.DTO.PostResponseDTO(
+                p.id, p.title, p.content, u.id, u.alias, p.created, p.version)
+            FROM Post p JOIN p.user u
+            WHERE p.created < :created
+               OR (p.created = :created AND p.id < :id)
+            ORDER BY p.created DESC, p.id DESC
+            """)
+    List<PostResponseDTO> findFeedAfter(@Param("created") Instant created, @Param("id") Long id, Limit limit);
+
+    /**
+     * Alla inlägg från en användare, nyaste först.
+     *
+     * @param userId Användarens id.
+     * @return Lista av PostResponseDTO.
+     */
+    @Query("""
+            SELECT new se.jensen.linea.onsocial_app.DTO.PostResponseDTO(
+                p.id, p.title, p.content, u.id, u.alias, p.created, p.version)
+            FROM Post p JOIN p.user u
+            WHERE u.id = :userId
+            ORDER BY p.created DESC, p.id DESC
+            """)
+    List<PostResponseDTO> findDtosByUserId(@Param("userId") Long userId);
+
+    /**
+     * Ett specifikt inlägg som PostResponseDTO.
+     *
+     * @param id Inläggets id.
+     * @return PostResponseDTO eller tom Optional om inlägget inte finns.
+     */
+    @Query("""
+            SELECT new se.jensen.linea.onsocial_app.DTO.PostResponseDTO(
+                p.id, p.title, p.content, u.id, u.alias, p.created, p.version)
+            FROM Post p JOIN p.user u
+            WHERE p.id = :id
+            """)
+    Optional<PostResponseDTO> findDtoById(@Param("id") Long id);
+
+    /**
+     * Alla inlägg som en ström, för export.
+     * Raderna hämtas från databasen i omgångar om EXPORT_FETCH_SIZE istället för att hela tabellen
+     * läses in i minnet. Eftersom resultatet är DTO:er hamnar inget i persistence context.
+     * Strömmen måste läsas inom en transaktion och stängas efteråt.
+     *
+     * @return En ström av PostResponseDTO sorterade på id.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            SELECT new se.jensen.linea.onsocial_app.DTO.PostResponseDTO(
+                p.id, p.title, p.content, u.id, u.alias, p.created, p.version)
+            FROM Post p JOIN p.user u
+            ORDER BY p.id
+            """)
+    Stream<PostResponseDTO> streamAll();
+
+    /**
+     * Flera inlägg som PostResponseDTO, t.ex. för att fylla i sökträffar.
+     * Ordningen i resultatet är inte garanterad.
+     *
+     * @param ids Inläggens id.
+     * @return Lista av PostResponseDTO.
+     */
+    @Query("""
+            SELECT new se.jensen.linea.onsocial_app.DTO.PostResponseDTO(
+                p.id, p.title, p.content, u.id, u.alias, p.created, p.version)
+            FROM Post p JOIN p.user u
+            WHERE p.id IN :ids
+            """)
+    List<PostResponseDTO> findDtosByIdIn(@Param("ids") List<Long> ids);
+
+    /**
+     * Första sidan av en fulltextsökning, bäst rankade träffar först.
+     * Använder GIN-indexet på search_vector (se PostgresSchemaInitializer), kräver PostgreSQL.
+     *
+     * @param query Söktext, tolkas med websearch_to_tsquery (stödjer "fraser", OR och -uteslut).
+     * @param limit Max antal träffar.
+     * @return Träffar sorterade på (rank, id) fallande.
+     */
+    @Query(value = """
+            SELECT p.id AS id,
+                   ts_rank(p.search_vector, websearch_to_tsquery('simple', :query)) AS rank
+            FROM posts p
+            WHERE p.search_vector @@ websearch_to_tsquery('simple', :query)
+            ORDER BY rank DESC, p.id DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<PostSearchHit> search(@Param("query") String query, @Param("limit") int limit);
+
+    /**
+     * Nästa sida av en fulltextsökning efter en given position (seek på rank och id).
+     *
+     * @param query Söktext.
+     * @param rank  Rank för sista träffen på föregående sida.
+     * @param id    ID för sista träffen på föregående sida.
+     * @param limit Max antal träffar.
+     * @return Träffar efter positionen, sorterade på (rank, id) fallande.
+     */
+    @Query(value = """
+            SELECT h.id AS id, h.rank AS rank
+            FROM (
+                SELECT p.id AS id,
+                       ts_rank(p.search_vector, websearch_to_tsquery('simple', :query)) AS rank
+                FROM posts p
+                WHERE p.search_vector @@ websearch_to_tsquery('simple', :query)
+            ) h
+            WHERE h.rank < CAST(:rank AS real)
+               OR (h.rank = CAST(:rank AS real) AND h.id < :id)
+            ORDER BY h.rank DESC, h.id DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<PostSearchHit> searchAfter(@Param("query") String query,
+                                    @Param("rank") float rank,
+                                    @Param("id") Long id,
+                                    @Param("limit") int limit);
+
+    /**
+     * Antal inlägg, senaste ändring och författarens alias för en användares inlägg.
+     * Används för att räkna fram en ETag för listan utan att hämta själva inläggen.
+     *
+     * @param userId Användarens id.
+     * @return Antal inlägg, senaste tidpunkt då något inlägg skapades eller ändrades, och aliaset.
+     */
+    @Query("""
+            SELECT new se.jensen.linea.onsocial_app.repository.PostListStamp(
+                COUNT(p), MAX(COALESCE(p.updated, p.created)), MAX(u.alias))
+            FROM Post p JOIN p.user u
+            WHERE u.id = :userId
+            """)
+    PostListStamp findStampByUserId(@Param("userId") Long userId);
+
+    /**
+     * Hämtar id för det inlägg som avslutar nästa omgång när en användares inlägg raderas,
+     * dvs. det (offset + 1):e lägsta id:t. Läses enbart från indexet på user_id.
+     *
+     * @param userId Användarens id.
+     * @param offset Antal inlägg i omgången minus ett.
+     * @return Id för sista inlägget i omgången, eller null om färre inlägg finns kvar.
+     */
+    @Query(value = """
+            SELECT id FROM posts
+            WHERE user_id = :userId
+            ORDER BY id
+            LIMIT 1 OFFSET :offset
+            """, nativeQuery = true)
+    Long findDeleteBoundary(@Param("userId") Long userId, @Param("offset") int offset);
+
+    /**
+     * Raderar en användares inlägg upp till och med ett visst id direkt i databasen, utan att ladda dem.
+     * Varje anrop är en egen kort transaktion.
+     *
+     * @param userId Användarens id.
+     * @param maxId  Högsta id som raderas.
+     * @return Antal raderade inlägg.
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Post p WHERE p.user.id = :userId AND p.id <= :maxId")
+    int deleteByUserIdUpTo(@Param("userId") Long userId, @Param("maxId") Long maxId);
+
+    /**
+     * Kontrollerar ägarskap utan att ladda inlägget eller användaren.
+     *
+     * @param id     Inläggets id.
+     * @param userId Användarens id.
+     * @return true om inlägget finns och tillhör användaren.
+     */
+    boolean existsByIdAndUserId(Long id, Long userId);
 }
@@ -0,0 +1,12 @@
+package se.jensen.linea.onsocial_app.repository;
+
+/**
+ * Projektion för en träff i fulltextsökningen.
+ * Innehåller bara inläggets id och rank, själva inlägget hämtas sedan med en vanlig projektion.
+ */
+public interface PostSearchHit {
+
+    Long getId();
+
+    Float getRank();
+}
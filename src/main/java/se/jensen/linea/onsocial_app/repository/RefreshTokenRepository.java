@@ -0,0 +1,68 @@
+package se.jensen.linea.onsocial_app.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import se.jensen.linea.onsocial_app.model.RefreshToken;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Repository för refresh tokens.
+ */
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+
+    /**
+     * Hämtar en token och dess användare i samma fråga.
+     *
+     * @param tokenHash SHA-256-hash av token.
+     * @return Token med användare, eller tom om ingen token har den hashen.
+     */
+    @Query("SELECT t FROM RefreshToken t JOIN FETCH t.user WHERE t.tokenHash = :tokenHash")
+    Optional<RefreshToken> findWithUserByTokenHash(@Param("tokenHash") String tokenHash);
+
+    /**
+     * Hämtar en token utan användare.
+     *
+     * @param tokenHash SHA-256-hash av token.
+     * @return Token, eller tom om ingen token har den hashen.
+     */
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    /**
+     * Markerar en token som använd, bara om den inte redan är använd eller spärrad.
+     * Villkoret kontrolleras i samma UPDATE, så två samtidiga anrop med samma token
+     * kan aldrig båda lyckas.
+     *
+     * @param id  Tokens id.
+     * @param now Tidpunkten.
+     * @return 1 om token markerades, 0 om den redan var använd eller spärrad.
+     */
+    @Modifying
+    @Query("UPDATE RefreshToken t SET t.usedAt = :now WHERE t.id = :id AND t.usedAt IS NULL AND t.revokedAt IS NULL")
+    int markUsed(@Param("id") Long id, @Param("now") Instant now);
+
+    /**
+     * Spärrar alla token från samma inloggning.
+     *
+     * @param familyId Inloggningens id.
+     * @param now      Tidpunkten.
+     * @return Antal spärrade token.
+     */
+    @Modifying
+    @Query("UPDATE RefreshToken t SET t.revokedAt = :now WHERE t.familyId = :familyId AND t.revokedAt IS NULL")
+    int revokeFamily(@Param("familyId") UUID familyId, @Param("now") Instant now);
+
+    /**
+     * Raderar token som har gått ut.
+     *
+     * @param now Tidpunkten.
+     * @return Antal raderade token.
+     */
+    @Modifying
+    @Query("DELETE FROM RefreshToken t WHERE t.expiresAt < :now")
+    int deleteExpired(@Param("now") Instant now);
+}
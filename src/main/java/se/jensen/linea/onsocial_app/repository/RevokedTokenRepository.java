@@ -0,0 +1,36 @@
+package se.jensen.linea.onsocial_app.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import se.jensen.linea.onsocial_app.model.RevokedToken;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repository för spärrade JWT access tokens.
+ */
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
+
+    /**
+     * Hämtar alla spärrar för token som ännu inte har gått ut.
+     *
+     * @param now Tidpunkten.
+     * @return Spärrar som fortfarande behövs.
+     */
+    List<RevokedToken> findByExpiresAtAfter(Instant now);
+
+    /**
+     * Raderar spärrar för token som har gått ut.
+     *
+     * @param now Tidpunkten.
+     * @return Antal raderade spärrar.
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RevokedToken t WHERE t.expiresAt <= :now")
+    int deleteExpired(@Param("now") Instant now);
+}
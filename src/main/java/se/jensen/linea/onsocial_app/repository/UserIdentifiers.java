@@ -0,0 +1,11 @@
+package se.jensen.linea.onsocial_app.repository;
+
+/**
+ * En användares alias och email, utan övriga kolumner.
+ * Används för att bygga filtren över upptagna alias och email.
+ *
+ * @param alias Användarens alias.
+ * @param email Användarens email.
+ */
+public record UserIdentifiers(String alias, String email) {
+}
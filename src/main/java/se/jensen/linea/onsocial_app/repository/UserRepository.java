@@ -1,9 +1,22 @@
 package se.jensen.linea.onsocial_app.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import se.jensen.linea.onsocial_app.DTO.AliasSuggestionDTO;
+import se.jensen.linea.onsocial_app.DTO.UserResponseDTO;
 import se.jensen.linea.onsocial_app.model.User;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * UserRepository ärver metoder från Spring Data JPA.
@@ -38,4 +51,127 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return "True" eller "false", om en användare med e-postadress finns eller inte.
      */
     boolean existsByEmail(String email);
+
+    /**
+     * Hämtar användare vars alias eller email matchar, med en enda fråga (alias = ? OR email = ?).
+     * Används vid inloggning där användaren kan skriva in antingen alias eller email.
+     *
+     * @param alias Alias att matcha.
+     * @param email E-postadress att matcha.
+     * @return De användare som matchar, högst två (en på alias och en på email).
+     */
+    List<User> findByAliasOrEmail(String alias, String email);
+
+    /**
+     * En sida av användarkatalogen sorterad på alias, bara kolumnerna i UserResponseDTO
+     * (aldrig lösenordshashen) och utan att entiteter hamnar i persistence context.
+     * <p>
+     * Seek-fråga på det unika indexet på alias: sidan börjar efter :after istället för med OFFSET,
+     * och :prefix ger en nedre gräns så att indexet kan hoppa direkt till första träffen.
+     *
+     * @param prefix  Aliasprefix att filtrera på, "" för alla.
+     * @param pattern LIKE-mönster för prefixet (med ! som escape-tecken), "%" för alla.
+     * @param after   Alias för sista raden på föregående sida, "" för första sidan.
+     * @param limit   Max antal rader som hämtas.
+     * @return Användare sorterade på alias.
+     */
+    @Query("""
+            SELECT new se.jensen.linea.onsocial_app.DTO.UserResponseDTO(
+                u.id, u.alias, u.email, u.firstName, u.lastName, u.profilePicture, u.role)
+            FROM User u
+            WHERE u.alias >= :prefix
+              AND u.alias > :after
+              AND u.alias LIKE :pattern ESCAPE '!'
+            ORDER BY u.alias
+            """)
+    List<UserResponseDTO> findDirectory(@Param("prefix") String prefix,
+                                        @Param("pattern") String pattern,
+                                        @Param("after") String after,
+                                        Limit limit);
+
+    /**
+     * Alla användares alias och email som en ström, för att bygga filtren över upptagna värden.
+     * Raderna hämtas i omgångar om 1000 istället för att hela tabellen läses in i minnet.
+     * Strömmen måste läsas inom en transaktion och stängas efteråt.
+     *
+     * @return En ström av alias och email.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new se.jensen.linea.onsocial_app.repository.UserIdentifiers(u.alias, u.email) FROM User u")
+    Stream<UserIdentifiers> streamIdentifiers();
+
+    /**
+     * Alla användares id, alias och profilbild som en ström, för att bygga aliasindexet för autocomplete.
+     * Strömmen måste läsas inom en transaktion och stängas efteråt.
+     *
+     * @return En ström av AliasSuggestionDTO.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new se.jensen.linea.onsocial_app.DTO.AliasSuggestionDTO(u.id, u.alias, u.profilePicture) FROM User u")
+    Stream<AliasSuggestionDTO> streamAliasSuggestions();
+
+    /**
+     * Sökning på alias som tål stavfel, med trigram-likhet (pg_trgm).
+     * Alias som börjar med söktexten kommer först, sedan de mest lika.
+     * Använder GIN-indexet på lower(alias) (se PostgresSchemaInitializer), kräver PostgreSQL.
+     *
+     * @param query   Söktext i gemener.
+     * @param pattern LIKE-mönster för söktexten som prefix (med ! som escape-tecken).
+     * @param limit   Max antal träffar.
+     * @return Träffar, prefixträffar först och sedan efter likhet.
+     */
+    @Query(value = """
+            SELECT u.user_id AS id, u.alias AS alias, u.profile_picture AS profilePicture
+            FROM users u
+            WHERE lower(u.alias) LIKE :pattern ESCAPE '!'
+               OR lower(u.alias) % :query
+            ORDER BY lower(u.alias) LIKE :pattern ESCAPE '!' DESC,
+                     similarity(lower(u.alias), :query) DESC,
+                     u.alias
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UserSearchHit> searchByAlias(@Param("query") String query,
+                                      @Param("pattern") String pattern,
+                                      @Param("limit") int limit);
+
+    /**
+     * Sparar en ny lösenordshash utan att först ladda användaren.
+     *
+     * @param id       Användarens id.
+     * @param password Den nya lösenordshashen.
+     * @return Antal uppdaterade rader.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.password = :password WHERE u.id = :id")
+    int updatePassword(@Param("id") Long id, @Param("password") String password);
+
+    /**
+     * Låser användarens rad (SELECT ... FOR UPDATE) tills transaktionen avslutas.
+     * Ett nytt inlägg för användaren väntar då på låset, eftersom databasen kontrollerar
+     * främmande nyckeln mot raden. Måste anropas inom en transaktion.
+     *
+     * @param id Användarens id.
+     * @return Användarens id, eller null om användaren inte finns.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Query(value = "SELECT user_id FROM users WHERE user_id = :id FOR UPDATE", nativeQuery = true)
+    Long lockById(@Param("id") Long id);
+
+    /**
+     * Raderar en användare med en DELETE-sats, utan att först ladda eller kontrollera den.
+     *
+     * @param id Användarens id.
+     * @return Antal raderade rader (0 om användaren inte fanns).
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM User u WHERE u.id = :id")
+    int deleteUserById(@Param("id") Long id);
 }
@@ -0,0 +1,13 @@
+package se.jensen.linea.onsocial_app.repository;
+
+/**
+ * Projektion för en träff i aliassökningen (pg_trgm).
+ */
+public interface UserSearchHit {
+
+    Long getId();
+
+    String getAlias();
+
+    String getProfilePicture();
+}
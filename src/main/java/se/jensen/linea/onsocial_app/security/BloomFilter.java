@@ -0,0 +1,116 @@
+package se.jensen.linea.onsocial_app.security;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ett enkelt, trådsäkert Bloom-filter för strängar.
+ * <p>
+ * Filtret svarar "finns säkert inte" eller "finns kanske". Ett nej är alltid korrekt, ett ja
+ * måste kontrolleras mot den exakta källan. Det tar ca 10 bitar per värde vid 1 % falska träffar,
+ * och en kontroll är några hashningar och minnesläsningar, utan lås och utan allokering.
+ * <p>
+ * Värden kan inte tas bort. Den som behöver ta bort värden bygger ett nytt filter och byter ut det gamla.
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    private BloomFilter(long bitCount, int hashCount) {
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+        // bitIndex() needs the size to fit in 32 bits
+        if (bitCount > 0xffffffffL) {
+            throw new IllegalArgumentException("Bloom filter too large: " + bitCount + " bits");
+        }
+        this.bits = new AtomicLongArray(Math.toIntExact((bitCount + 63) / 64));
+    }
+
+    /**
+     * Skapar ett filter dimensionerat för ett visst antal värden och en viss andel falska träffar.
+     *
+     * @param expectedInsertions Förväntat antal värden, fler går att lägga till men ger fler falska träffar.
+     * @param falsePositiveRate  Önskad andel falska träffar, t.ex. 0.01.
+     * @return Ett tomt filter.
+     */
+    public static BloomFilter create(long expectedInsertions, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        long n = Math.max(1, expectedInsertions);
+        // Optimal size and number of hash functions for n values at the given rate
+        long m = Math.max(64, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        int k = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        return new BloomFilter(m, k);
+    }
+
+    /**
+     * Lägger till ett värde.
+     *
+     * @param value Värdet.
+     */
+    public void put(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = bitIndex(h1 + i * h2);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            do {
+                current = bits.get(word);
+            } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * Kontrollerar om ett värde kan finnas i filtret.
+     *
+     * @param value Värdet.
+     * @return false om värdet säkert inte finns, true om det kanske finns.
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = bitIndex(h1 + i * h2);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Uppskattar andelen falska träffar utifrån hur många bitar som är satta just nu.
+     *
+     * @return Sannolikheten att ett värde som inte finns ger "finns kanske".
+     */
+    public double expectedFalsePositiveRate() {
+        long set = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            set += Long.bitCount(bits.get(i));
+        }
+        return Math.pow((double) set / bitCount, hashCount);
+    }
+
+    // Maps the hash onto [0, bitCount) with a multiply and shift instead of a slow division
+    private long bitIndex(int combinedHash) {
+        return ((combinedHash & 0xffffffffL) * bitCount) >>> 32;
+    }
+
+    // String caches its hashCode, so a value checked on every request is only hashed once.
+    // The MurmurHash3 mixer spreads it into two well distributed halves for double hashing.
+    private static long hash(String value) {
+        long hash = value.hashCode() * 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
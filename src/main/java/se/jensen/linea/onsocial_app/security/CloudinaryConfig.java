@@ -3,6 +3,7 @@ package se.jensen.linea.onsocial_app.security;
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -10,11 +11,13 @@ import org.springframework.context.annotation.Configuration;
  * Klassen förbereder Cloudinary för bilduppladdning.
  * Hämtar inloggningsuppgifter från application.properties och
  * skapar en Cloudinary-instans som andra klasser kan använda.
+ * Används bara när bilder sparas i Cloudinary (media.storage=cloudinary, standard).
  *
  * @author Simeon
  * Dokumenterad: 2026-01-26
  */
 @Configuration
+@ConditionalOnProperty(name = "media.storage", havingValue = "cloudinary", matchIfMissing = true)
 public class CloudinaryConfig {
 
     /**
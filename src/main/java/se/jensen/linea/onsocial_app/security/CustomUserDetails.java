@@ -1,6 +1,7 @@
 package se.jensen.linea.onsocial_app.security;
 
 import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -28,9 +29,12 @@ public class CustomUserDetails implements UserDetails {
     private final String email;
     private final String password;
     private final String role;
+    // The loaded user, so login can answer without reading it again. Null when built from a JWT.
+    private final transient User user;
 
     // Constructor
     public CustomUserDetails(User user) {
+        this.user = user;
         this.id = user.getId();
         this.alias = user.getAlias();
         this.email = user.getEmail();
@@ -38,6 +42,24 @@ public class CustomUserDetails implements UserDetails {
         this.role = user.getRole();
     }
 
+    /**
+     * Skapar användaruppgifter direkt från en verifierad JWT, utan att läsa från databasen.
+     * Token innehåller aldrig lösenordet, därför är password tomt.
+     *
+     * @param id    Användarens id (claim "uid").
+     * @param alias Användarens alias (subject).
+     * @param email Användarens email (claim "email").
+     * @param role  Användarens roll (claim "role").
+     */
+    public CustomUserDetails(Long id, String alias, String email, String role) {
+        this.id = id;
+        this.alias = alias;
+        this.email = email;
+        this.password = "";
+        this.role = role;
+        this.user = null;
+    }
+
     /**
      * Denna metod omvandlar användarens roll till ett format som Spring Security
      * förstår för behörighetskontroller.
@@ -63,7 +85,20 @@ public class CustomUserDetails implements UserDetails {
         return id;
     }
 
+    public @NonNull String getRole() {
+        return role;
+    }
+
     public @NonNull String getEmail() {
         return email;
     }
+
+    /**
+     * Användaren som laddades från databasen vid inloggning.
+     *
+     * @return Användaren, eller null om uppgifterna byggdes från en JWT.
+     */
+    public @Nullable User getUser() {
+        return user;
+    }
 }
\ No newline at end of file
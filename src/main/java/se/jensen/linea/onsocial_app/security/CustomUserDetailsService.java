@@ -1,24 +1,29 @@
 package se.jensen.linea.onsocial_app.security;
 
 import org.jspecify.annotations.NonNull;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import se.jensen.linea.onsocial_app.config.CacheConfig;
 import se.jensen.linea.onsocial_app.model.User;
 import se.jensen.linea.onsocial_app.repository.UserRepository;
 
-import java.util.Optional;
+import java.util.List;
 
 /**
  * Klassen används av Spring Security för att hitta och ladda användaren från databasen vid inloggning.
  * Det är alltså en brygga mellan Spring Security och databasen.
+ * Den sparar också om lösenord som har hashats om vid inloggning (UserDetailsPasswordService).
  *
  * @author Simeon
  * Dokumenterad: 2026-01-26
  */
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepository userRepository;
 
@@ -39,53 +44,51 @@ public class CustomUserDetailsService implements UserDetailsService {
      * @throws UsernameNotFoundException om användaren inte hittas i databasen.
      */
     @Override
+    @Cacheable(cacheNames = CacheConfig.USERS_CACHE, key = "#identifier")
     public @NonNull UserDetails loadUserByUsername(@NonNull String identifier) throws UsernameNotFoundException {
         return loadUserByAliasOrEmail(identifier);
     }
 
     /**
      * Denna metod gör det möjligt för loadUserByUsername att identifiera användare med alias eller email.
+     * Alias och email matchas i samma fråga (alias = ? OR email = ?), så inloggningen kostar
+     * högst en läsning från databasen, och ingen alls om användaren redan finns i användarcachen.
+     * Cachen töms av UserService när en användare ändras eller raderas.
      *
      * @param identifier användarens alias eller email.
      * @return Antingen en hämtad användare genom alias eller email, eller ett felmeddelande.
      * @throws UsernameNotFoundException om användaren inte hittas i databasen.
      */
+    @Cacheable(cacheNames = CacheConfig.USERS_CACHE, key = "#identifier")
     public @NonNull UserDetails loadUserByAliasOrEmail(@NonNull String identifier) throws UsernameNotFoundException {
-        // Try first to find by alias
-        Optional<User> userByAlias = userRepository.findByAlias(identifier);
-        if (userByAlias.isPresent()) {
-            return new CustomUserDetails(userByAlias.get());
-        }
+        List<User> users = userRepository.findByAliasOrEmail(identifier, identifier);
 
-        // If not found try email
-        Optional<User> userByEmail = userRepository.findByEmail(identifier);
-        if (userByEmail.isPresent()) {
-            return new CustomUserDetails(userByEmail.get());
-        }
-
-        // Not found
-        throw new UsernameNotFoundException("User not found with alias or email: " + identifier);
+        // An alias match wins if the identifier is one user's alias and another user's email
+        return users.stream()
+                .filter(user -> identifier.equals(user.getAlias()))
+                .findFirst()
+                .or(() -> users.stream().findFirst())
+                .map(CustomUserDetails::new)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found with alias or email: " + identifier));
     }
 
     /**
-     * Metoden kollar om alias redan finns i databasen, validerar användarens input i realtid.
-     * Detta sker i frontend.
+     * Anropas av Spring Security efter en lyckad inloggning när lösenordshashen har lägre kostnad
+     * än den konfigurerade (security.password.bcrypt-strength). Lösenordet är då redan hashat om
+     * och sparas här, så användaren märker ingenting.
      *
-     * @param alias användarens alias.
-     * @return true om alias finns, annars false.
+     * @param user        Den inloggade användaren.
+     * @param newPassword Den nya lösenordshashen.
+     * @return Användaruppgifter med den nya hashen.
      */
-    public boolean aliasExists(String alias) {
-        return userRepository.existsByAlias(alias);
-    }
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.USERS_CACHE, allEntries = true)
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        CustomUserDetails userDetails = (CustomUserDetails) user;
+        userRepository.updatePassword(userDetails.getId(), newPassword);
 
-    /**
-     * Metoden kollar om email redan finns i databasen, validerar användarens input i realtid.
-     * Detta sker i frontend.
-     *
-     * @param email användarens email.
-     * @return true om email finns, annars false.
-     */
-    public boolean emailExists(String email) {
-        return userRepository.existsByEmail(email);
+        User updatedUser = userDetails.getUser();
+        updatedUser.setPassword(newPassword);
+        return new CustomUserDetails(updatedUser);
     }
 }
\ No newline at end of file
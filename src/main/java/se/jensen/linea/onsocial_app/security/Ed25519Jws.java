@@ -0,0 +1,128 @@
+package se.jensen.linea.onsocial_app.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
+import com.nimbusds.jose.jca.JCAContext;
+import com.nimbusds.jose.util.Base64URL;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Set;
+
+/**
+ * EdDSA (Ed25519) för JWT med Javas inbyggda Ed25519-stöd.
+ * <p>
+ * Nimbus egna Ed25519-klasser kräver biblioteket Tink. JDK:n har haft Ed25519 sedan Java 15,
+ * så här signeras och verifieras med java.security.Signature istället.
+ */
+final class Ed25519Jws {
+
+    private static final String SIGNATURE_ALGORITHM = "Ed25519";
+    private static final Set<JWSAlgorithm> SUPPORTED = Set.of(JWSAlgorithm.EdDSA);
+
+    private Ed25519Jws() {
+    }
+
+    /**
+     * Signerar med en privat Ed25519-nyckel.
+     */
+    static final class Signer implements JWSSigner {
+
+        private final PrivateKey privateKey;
+        private final JCAContext jcaContext = new JCAContext();
+
+        Signer(PrivateKey privateKey) {
+            this.privateKey = privateKey;
+        }
+
+        @Override
+        public Base64URL sign(JWSHeader header, byte[] signingInput) throws JOSEException {
+            requireEdDsa(header);
+            try {
+                Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+                signature.initSign(privateKey);
+                signature.update(signingInput);
+                return Base64URL.encode(signature.sign());
+            } catch (GeneralSecurityException e) {
+                throw new JOSEException("Ed25519 signing failed: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+            return SUPPORTED;
+        }
+
+        @Override
+        public JCAContext getJCAContext() {
+            return jcaContext;
+        }
+    }
+
+    /**
+     * Verifierar med en publik Ed25519-nyckel.
+     */
+    static final class Verifier implements JWSVerifier {
+
+        private final PublicKey publicKey;
+        private final JCAContext jcaContext = new JCAContext();
+
+        Verifier(PublicKey publicKey) {
+            this.publicKey = publicKey;
+        }
+
+        @Override
+        public boolean verify(JWSHeader header, byte[] signingInput, Base64URL signedContent) throws JOSEException {
+            requireEdDsa(header);
+            try {
+                Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+                signature.initVerify(publicKey);
+                signature.update(signingInput);
+                return signature.verify(signedContent.decode());
+            } catch (GeneralSecurityException e) {
+                // A malformed signature is simply not valid
+                return false;
+            }
+        }
+
+        @Override
+        public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+            return SUPPORTED;
+        }
+
+        @Override
+        public JCAContext getJCAContext() {
+            return jcaContext;
+        }
+    }
+
+    /**
+     * Skapar verifierare: Ed25519 för EdDSA, Nimbus standardverifierare för RS256 och ES256.
+     */
+    static final class VerifierFactory extends DefaultJWSVerifierFactory {
+
+        @Override
+        public JWSVerifier createJWSVerifier(JWSHeader header, Key key) throws JOSEException {
+            if (JWSAlgorithm.EdDSA.equals(header.getAlgorithm())) {
+                if (!(key instanceof PublicKey publicKey)) {
+                    throw new JOSEException("EdDSA requires an Ed25519 public key");
+                }
+                return new Verifier(publicKey);
+            }
+            return super.createJWSVerifier(header, key);
+        }
+    }
+
+    private static void requireEdDsa(JWSHeader header) throws JOSEException {
+        if (!JWSAlgorithm.EdDSA.equals(header.getAlgorithm())) {
+            throw new JOSEException("Unsupported JWS algorithm: " + header.getAlgorithm());
+        }
+    }
+}
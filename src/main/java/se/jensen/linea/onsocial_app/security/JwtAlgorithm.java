@@ -0,0 +1,54 @@
+package se.jensen.linea.onsocial_app.security;
+
+import com.nimbusds.jose.JWSAlgorithm;
+
+/**
+ * Signeringsalgoritmer som kan användas för våra JWT-token (jwt.algorithm).
+ * <p>
+ * RS256 är standard. ES256 och EdDSA (Ed25519) ger mycket kortare signaturer och är betydligt
+ * snabbare att signera än RSA, vilket gör inloggningen billigare.
+ */
+public enum JwtAlgorithm {
+
+    RS256("RSA", JWSAlgorithm.RS256),
+    ES256("EC", JWSAlgorithm.ES256),
+    EdDSA("Ed25519", JWSAlgorithm.EdDSA);
+
+    private final String keyAlgorithm;
+    private final JWSAlgorithm jwsAlgorithm;
+
+    JwtAlgorithm(String keyAlgorithm, JWSAlgorithm jwsAlgorithm) {
+        this.keyAlgorithm = keyAlgorithm;
+        this.jwsAlgorithm = jwsAlgorithm;
+    }
+
+    /**
+     * @return Namnet på nyckeltypen i Javas KeyFactory (RSA, EC eller Ed25519).
+     */
+    public String keyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    /**
+     * @return Algoritmen som den står i JWT-headern ("alg").
+     */
+    public JWSAlgorithm jwsAlgorithm() {
+        return jwsAlgorithm;
+    }
+
+    /**
+     * Tolkar algoritmens namn, oavsett stora och små bokstäver.
+     *
+     * @param name T.ex. "RS256", "ES256" eller "EdDSA".
+     * @return Algoritmen.
+     * @throws IllegalArgumentException om algoritmen inte stöds.
+     */
+    public static JwtAlgorithm from(String name) {
+        for (JwtAlgorithm algorithm : values()) {
+            if (algorithm.name().equalsIgnoreCase(name.trim())) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported JWT algorithm: " + name);
+    }
+}
@@ -0,0 +1,94 @@
+package se.jensen.linea.onsocial_app.security;
+
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.util.Base64URL;
+import org.jspecify.annotations.Nullable;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * En nyckel för JWT-token med sitt key id ("kid").
+ * Den nyckel som signerar nya token har en privat nyckel, äldre nycklar som bara verifierar har det inte.
+ *
+ * @param keyId      Nyckelns id, skrivs i JWT-headern så att rätt nyckel kan väljas vid verifiering.
+ * @param algorithm  Signeringsalgoritmen.
+ * @param publicKey  Publik nyckel, används för att verifiera.
+ * @param privateKey Privat nyckel, används för att signera. Null för nycklar som bara verifierar.
+ */
+public record JwtKey(String keyId, JwtAlgorithm algorithm, PublicKey publicKey, @Nullable PrivateKey privateKey) {
+
+    // X.509 encoding of an Ed25519 public key is a fixed 12 byte prefix followed by the raw 32 byte key
+    private static final int ED25519_KEY_LENGTH = 32;
+
+    /**
+     * Läser in en nyckel från Base64-kodade strängar (X.509 för publik, PKCS#8 för privat),
+     * samma format som JWT_PUBLIC_KEY och JWT_PRIVATE_KEY.
+     *
+     * @param keyId      Nyckelns id.
+     * @param algorithm  Signeringsalgoritmen, avgör nyckeltypen.
+     * @param publicKey  Base64-kodad publik nyckel.
+     * @param privateKey Base64-kodad privat nyckel, eller null om nyckeln bara ska verifiera.
+     * @return Nyckeln.
+     * @throws IllegalArgumentException om nyckeln inte går att läsa eller inte passar algoritmen.
+     */
+    public static JwtKey decode(String keyId, JwtAlgorithm algorithm, String publicKey, @Nullable String privateKey) {
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance(algorithm.keyAlgorithm());
+            PublicKey pubKey = keyFactory.generatePublic(
+                    new X509EncodedKeySpec(Base64.getDecoder().decode(publicKey.trim())));
+            PrivateKey privKey = privateKey == null ? null : keyFactory.generatePrivate(
+                    new PKCS8EncodedKeySpec(Base64.getDecoder().decode(privateKey.trim())));
+
+            if (algorithm == JwtAlgorithm.ES256
+                    && ((ECPublicKey) pubKey).getParams().getCurve().getField().getFieldSize() != 256) {
+                throw new IllegalArgumentException("ES256 requires a P-256 key, key id: " + keyId);
+            }
+            return new JwtKey(keyId, algorithm, pubKey, privKey);
+        } catch (GeneralSecurityException | IllegalArgumentException | ClassCastException e) {
+            throw new IllegalArgumentException("Invalid " + algorithm + " key for key id: " + keyId, e);
+        }
+    }
+
+    /**
+     * Den publika delen som JWK, för att publicera i /.well-known/jwks.json.
+     *
+     * @return Publik JWK med kid, alg och use=sig.
+     */
+    public JWK toPublicJwk() {
+        return switch (algorithm) {
+            case RS256 -> new RSAKey.Builder((RSAPublicKey) publicKey)
+                    .keyID(keyId)
+                    .algorithm(algorithm.jwsAlgorithm())
+                    .keyUse(KeyUse.SIGNATURE)
+                    .build();
+            case ES256 -> new ECKey.Builder(Curve.P_256, (ECPublicKey) publicKey)
+                    .keyID(keyId)
+                    .algorithm(algorithm.jwsAlgorithm())
+                    .keyUse(KeyUse.SIGNATURE)
+                    .build();
+            case EdDSA -> {
+                byte[] encoded = publicKey.getEncoded();
+                byte[] raw = Arrays.copyOfRange(encoded, encoded.length - ED25519_KEY_LENGTH, encoded.length);
+                yield new OctetKeyPair.Builder(Curve.Ed25519, Base64URL.encode(raw))
+                        .keyID(keyId)
+                        .algorithm(algorithm.jwsAlgorithm())
+                        .keyUse(KeyUse.SIGNATURE)
+                        .build();
+            }
+        };
+    }
+}
@@ -0,0 +1,128 @@
+package se.jensen.linea.onsocial_app.security;
+
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Håller nyckeln som signerar nya JWT-token och alla nycklar som fortfarande får verifiera token.
+ * <p>
+ * Nycklarna kan bytas utan driftstopp: den nya nyckeln sätts som signeringsnyckel (med nytt kid)
+ * och den gamla publika nyckeln läggs i jwt.previous-keys. Token som redan är utfärdade med den
+ * gamla nyckeln verifieras då tills de går ut, därefter kan den gamla nyckeln tas bort.
+ * <p>
+ * Vid verifiering väljs nyckeln utifrån kid i JWT-headern, och algoritmen i headern måste
+ * stämma med nyckelns algoritm.
+ */
+public class JwtKeyRing implements JWSKeySelector<SecurityContext> {
+
+    private final JwtKey signingKey;
+    private final Map<String, JwtKey> verificationKeys = new LinkedHashMap<>();
+
+    public JwtKeyRing(JwtKey signingKey, List<JwtKey> previousKeys) {
+        if (signingKey.privateKey() == null) {
+            throw new IllegalArgumentException("The signing key needs a private key, key id: " + signingKey.keyId());
+        }
+        this.signingKey = signingKey;
+        verificationKeys.put(signingKey.keyId(), signingKey);
+        for (JwtKey key : previousKeys) {
+            if (verificationKeys.putIfAbsent(key.keyId(), key) != null) {
+                throw new IllegalArgumentException("Duplicate JWT key id: " + key.keyId());
+            }
+        }
+    }
+
+    /**
+     * Läser in nycklarna från inställningarna.
+     *
+     * @param algorithm    Algoritm för signeringsnyckeln (jwt.algorithm).
+     * @param keyId        Signeringsnyckelns id (jwt.key-id).
+     * @param privateKey   Base64-kodad privat nyckel (jwt.private-key).
+     * @param publicKey    Base64-kodad publik nyckel (jwt.public-key).
+     * @param previousKeys Äldre publika nycklar (jwt.previous-keys), kommaseparerade som "kid:ALG:base64".
+     * @return Nyckelringen.
+     */
+    public static JwtKeyRing from(String algorithm,
+                                  String keyId,
+                                  String privateKey,
+                                  String publicKey,
+                                  String previousKeys) {
+        JwtKey signingKey = JwtKey.decode(keyId, JwtAlgorithm.from(algorithm), publicKey, privateKey);
+
+        List<JwtKey> previous = previousKeys == null || previousKeys.isBlank()
+                ? List.of()
+                : Arrays.stream(previousKeys.split(","))
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .map(JwtKeyRing::decodePreviousKey)
+                .toList();
+
+        return new JwtKeyRing(signingKey, previous);
+    }
+
+    private static JwtKey decodePreviousKey(String entry) {
+        String[] parts = entry.split(":", 3);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Expected kid:ALG:base64 in jwt.previous-keys, got: " + entry);
+        }
+        return JwtKey.decode(parts[0], JwtAlgorithm.from(parts[1]), parts[2], null);
+    }
+
+    /**
+     * @return Nyckeln som signerar nya token.
+     */
+    public JwtKey signingKey() {
+        return signingKey;
+    }
+
+    /**
+     * Väljer nyckel för att verifiera en token, utifrån kid och alg i headern.
+     *
+     * @param header  JWT-headern.
+     * @param context Används inte.
+     * @return Nyckeln, eller en tom lista om inget kid matchar (token avvisas då).
+     */
+    @Override
+    public List<PublicKey> selectJWSKeys(JWSHeader header, SecurityContext context) {
+        JwtKey key = verificationKeys.get(header.getKeyID());
+        if (key == null || !key.algorithm().jwsAlgorithm().equals(header.getAlgorithm())) {
+            return List.of();
+        }
+        return List.of(key.publicKey());
+    }
+
+    /**
+     * Skapar en decoder som verifierar token med nyckelringens nycklar, oavsett algoritm.
+     *
+     * @return En decoder utan cache.
+     */
+    public NimbusJwtDecoder createDecoder() {
+        DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+        processor.setJWSKeySelector(this);
+        processor.setJWSVerifierFactory(new Ed25519Jws.VerifierFactory());
+        // Expiry and other claims are checked by Spring's default validators in NimbusJwtDecoder
+        processor.setJWTClaimsSetVerifier((claims, context) -> {
+        });
+        return new NimbusJwtDecoder(processor);
+    }
+
+    /**
+     * Alla publika nycklar som JWK Set, för att publicera i /.well-known/jwks.json.
+     *
+     * @return JWK Set utan privata nycklar.
+     */
+    public JWKSet toPublicJwkSet() {
+        return new JWKSet(verificationKeys.values().stream()
+                .map(JwtKey::toPublicJwk)
+                .toList());
+    }
+}
@@ -0,0 +1,77 @@
+package se.jensen.linea.onsocial_app.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.JwtEncodingException;
+
+import java.security.PrivateKey;
+import java.security.interfaces.ECPrivateKey;
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * JwtEncoder som signerar med nyckelringens signeringsnyckel, med RS256, ES256 eller EdDSA.
+ * <p>
+ * Headern får alltid nyckelns alg och kid, så att rätt nyckel kan väljas vid verifiering
+ * även när flera nycklar är i bruk under ett nyckelbyte. En JwsHeader i anropet ignoreras.
+ */
+public class KeyRingJwtEncoder implements JwtEncoder {
+
+    private final JwtKey key;
+    private final JWSSigner signer;
+    private final JWSHeader header;
+
+    public KeyRingJwtEncoder(JwtKeyRing keyRing) {
+        this.key = keyRing.signingKey();
+        this.signer = createSigner(key);
+        this.header = new JWSHeader.Builder(key.algorithm().jwsAlgorithm())
+                .type(JOSEObjectType.JWT)
+                .keyID(key.keyId())
+                .build();
+    }
+
+    @Override
+    public Jwt encode(JwtEncoderParameters parameters) throws JwtEncodingException {
+        JwtClaimsSet claims = parameters.getClaims();
+
+        JWTClaimsSet.Builder builder = new JWTClaimsSet.Builder();
+        // Nimbus writes Date values as epoch seconds (iat, exp, nbf)
+        claims.getClaims().forEach((name, value) ->
+                builder.claim(name, value instanceof Instant instant ? Date.from(instant) : value));
+
+        SignedJWT signedJwt = new SignedJWT(header, builder.build());
+        try {
+            signedJwt.sign(signer);
+        } catch (JOSEException e) {
+            throw new JwtEncodingException("Failed to sign JWT with key id " + key.keyId() + ": " + e.getMessage(), e);
+        }
+
+        return Jwt.withTokenValue(signedJwt.serialize())
+                .headers(headers -> headers.putAll(header.toJSONObject()))
+                .claims(jwtClaims -> jwtClaims.putAll(claims.getClaims()))
+                .build();
+    }
+
+    private static JWSSigner createSigner(JwtKey key) {
+        PrivateKey privateKey = key.privateKey();
+        try {
+            return switch (key.algorithm()) {
+                case RS256 -> new RSASSASigner(privateKey);
+                case ES256 -> new ECDSASigner((ECPrivateKey) privateKey);
+                case EdDSA -> new Ed25519Jws.Signer(privateKey);
+            };
+        } catch (JOSEException e) {
+            throw new IllegalArgumentException("Invalid signing key for key id: " + key.keyId(), e);
+        }
+    }
+}
@@ -2,7 +2,6 @@ package se.jensen.linea.onsocial_app.security;
 
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
-import se.jensen.linea.onsocial_app.model.Post;
 import se.jensen.linea.onsocial_app.repository.PostRepository;
 
 /**
@@ -41,8 +40,7 @@ public class PostSecurityService {
         CustomUserDetails userDetails = (CustomUserDetails) authentication.getPrincipal();
         Long userId = userDetails.getId();
 
-        Post post = postRepository.findById(postId).orElse(null);
-
-        return post != null && post.getUser().getId().equals(userId);
+        // Single EXISTS query, neither the post nor the user is loaded
+        return postRepository.existsByIdAndUserId(postId, userId);
     }
 }
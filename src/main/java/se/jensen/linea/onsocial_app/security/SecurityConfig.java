@@ -1,41 +1,32 @@
 package se.jensen.linea.onsocial_app.security;
 
-import com.nimbusds.jose.jwk.JWKSet;
-import com.nimbusds.jose.jwk.RSAKey;
-import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
-import com.nimbusds.jose.jwk.source.JWKSource;
-import com.nimbusds.jose.proc.SecurityContext;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
 import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.JwtEncoder;
-import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
-import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
-import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.InvalidBearerTokenException;
 import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
+import se.jensen.linea.onsocial_app.service.TokenService;
 
-import java.security.KeyFactory;
-import java.security.KeyPair;
-import java.security.PrivateKey;
-import java.security.PublicKey;
-import java.security.interfaces.RSAPrivateKey;
-import java.security.interfaces.RSAPublicKey;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
-import java.util.Base64;
+import java.time.Duration;
 import java.util.List;
 
 /**
@@ -72,11 +63,16 @@ public class SecurityConfig {
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers(HttpMethod.GET, "/posts/findall").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/posts/search").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/posts/live").permitAll()
                         .requestMatchers(HttpMethod.POST, "/auth/**").permitAll()
                         .requestMatchers(HttpMethod.GET, "/auth/check-alias").permitAll()
                         .requestMatchers(HttpMethod.GET, "/auth/check-email").permitAll()
                         .requestMatchers(HttpMethod.POST, "/upload/public/**").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/upload/jobs/*").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/media/**").permitAll()
                         .requestMatchers(HttpMethod.GET, "/users/find_all").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/.well-known/jwks.json").permitAll()
 
                         // Swagger
                         .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()
@@ -107,6 +103,8 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(List.of("http://localhost:5174", "http://localhost:5173", "https://jealous-charlotte-linealicia-21fed96d.koyeb.app"));
         configuration.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(List.of("*"));
+        // Let the frontend read ETag for conditional requests (If-None-Match / If-Match)
+        configuration.setExposedHeaders(List.of("ETag"));
         // configuration.setAllowCredentials(true); Only needed if we make JWT sessions in cookie header
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -117,12 +115,26 @@ public class SecurityConfig {
     /**
      * Ett verktyg för att kryptera lösenord.
      * Vi sparar aldrig riktiga lösenord i databasen, bara krypterade versioner.
+     * <p>
+     * BCrypt körs i en egen begränsad trådpool (se BoundedPasswordEncoder), så att många
+     * inloggningar samtidigt inte tar alla trådar från övriga anrop.
      *
+     * @param strength      BCrypt-kostnad, höjs den hashas lösenord om vid nästa inloggning.
+     * @param threads       Antal trådar som hashar, 0 betyder en per processorkärna.
+     * @param queueCapacity Max antal väntande hashningar innan anrop avvisas med 503.
+     * @param retryAfter    Värdet i Retry-After när ett anrop avvisas.
+     * @param meterRegistry Registrerar kölängd och hashningstid som mätvärden.
      * @return En algoritm (BCrypt) som används för att hash-lagra lösenordet säkert.
      */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(
+            @Value("${security.password.bcrypt-strength:10}") int strength,
+            @Value("${security.password.threads:0}") int threads,
+            @Value("${security.password.queue-capacity:64}") int queueCapacity,
+            @Value("${security.password.retry-after:1s}") Duration retryAfter,
+            MeterRegistry meterRegistry) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new BoundedPasswordEncoder(strength, poolSize, queueCapacity, retryAfter, meterRegistry);
     }
 
     /**
@@ -139,90 +151,108 @@ public class SecurityConfig {
     }
 
     /**
-     * Hämtar och förbereder de hemliga nycklarna (RSA) som används för att
+     * Hämtar och förbereder de hemliga nycklarna som används för att
      * signera och verifiera våra JWT-token.
+     * <p>
+     * Algoritmen väljs med jwt.algorithm (RS256, ES256 eller EdDSA) och nycklarna måste vara av
+     * motsvarande typ. Vid nyckelbyte läggs den gamla publika nyckeln i jwt.previous-keys,
+     * så att redan utfärdade token fortsätter att fungera tills de går ut (se JwtKeyRing).
      *
-     * @param privateKey Den hemliga text-strängen från vår inställningsfil (.env)
-     *                   som används för att signera tokens.
-     * @param publicKey  Den publika text-strängen som används för att verifiera tokens.
-     * @return Ett KeyPair-objekt som håller i både den privata och publika nyckeln.
-     * @throws Exception kastas om något fel inträffar vid formatering eller om RSA-algoritmen inte kan läsa dem.
+     * @param algorithm    Signeringsalgoritmen.
+     * @param keyId        Id (kid) för nyckeln som signerar nya token.
+     * @param privateKey   Den hemliga text-strängen från vår inställningsfil (.env)
+     *                     som används för att signera tokens.
+     * @param publicKey    Den publika text-strängen som används för att verifiera tokens.
+     * @param previousKeys Äldre publika nycklar som fortfarande får verifiera, "kid:ALG:base64" kommaseparerade.
+     * @return En nyckelring med signeringsnyckeln och alla nycklar som får verifiera.
      */
     @Bean
-    public KeyPair keyPair(
+    public JwtKeyRing jwtKeyRing(
+            @Value("${jwt.algorithm:RS256}") String algorithm,
+            @Value("${jwt.key-id:jwt-key-1}") String keyId,
             @Value("${jwt.private-key}") String privateKey,
-            @Value("${jwt.public-key}") String publicKey
-    ) throws Exception {
-        byte[] privateBytes = Base64.getDecoder().decode(privateKey);
-        byte[] publicBytes = Base64.getDecoder().decode(publicKey);
-
-        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-
-        PrivateKey privKey = keyFactory.generatePrivate(
-                new PKCS8EncodedKeySpec(privateBytes)
-        );
-        PublicKey pubKey = keyFactory.generatePublic(
-                new X509EncodedKeySpec(publicBytes)
-        );
-
-        return new KeyPair(pubKey, privKey);
-    }
-
-    /**
-     * Paketerar om våra RSA-nycklar till ett format som JWT-biblioteket förstår.
-     *
-     * @param keyPair De nycklar vi skapade i metoden ovan.
-     * @return En källa för JSON Web Keys (JWK) som används vid kryptering.
-     */
-    @Bean
-    public JWKSource<SecurityContext> jwkSource(KeyPair keyPair) {
-        RSAKey rsaKey = new RSAKey.Builder((RSAPublicKey) keyPair.getPublic())
-                .privateKey((RSAPrivateKey) keyPair.getPrivate())
-                .keyID("jwt-key-1")
-                .build();
-
-        JWKSet jwkSet = new JWKSet(rsaKey);
-        return new ImmutableJWKSet<>(jwkSet);
+            @Value("${jwt.public-key}") String publicKey,
+            @Value("${jwt.previous-keys:}") String previousKeys
+    ) {
+        return JwtKeyRing.from(algorithm, keyId, privateKey, publicKey, previousKeys);
     }
 
     /**
      * Skapar verktyg som signerar och låser våra JWT-token (låser innehållet så att ingen kan ändra det).
      *
-     * @param jwkSource Källan till nycklarna.
+     * @param jwtKeyRing Nycklarna, signeringsnyckeln används.
      * @return En encoder-instans som kan skapa och signera nya, säkra tokens till användaren.
      */
     @Bean
-    public JwtEncoder jwtEncoder(JWKSource<SecurityContext> jwkSource) {
-        return new NimbusJwtEncoder(jwkSource);
+    public JwtEncoder jwtEncoder(JwtKeyRing jwtKeyRing) {
+        return new KeyRingJwtEncoder(jwtKeyRing);
     }
 
     /**
      * Skapar verktyget som "läser"/verifierar och låser upp tokens.
+     * Nyckeln väljs utifrån kid i token, så token från alla nycklar i nyckelringen godkänns.
+     * Verifierade tokens sparas i en cache (se CachingJwtDecoder), så att samma token
+     * bara verifieras en gång under sin livstid.
+     * <p>
+     * Efter verifieringen kontrolleras att token inte är spärrad (se TokenRevocationService).
+     * Kontrollen görs i minnet, även för token som kommer ur cachen.
      *
-     * @param keyPair Objektet som innehåller våra nycklar (här används bara den publika nyckeln).
+     * @param jwtKeyRing    Nycklarna som får verifiera.
+     * @param cacheSize     Max antal verifierade tokens i cachen.
+     * @param meterRegistry Registrerar cachens träffar och missar som mätvärden (cache.*, name=jwt).
+     * @param tokenRevocationService Spärrade tokens.
      * @return En decoder-instans som kan verifiera att tokens är äkta.
      */
     @Bean
-    public JwtDecoder jwtDecoder(KeyPair keyPair) {
-        return NimbusJwtDecoder
-                .withPublicKey((RSAPublicKey) keyPair.getPublic())
-                .build();
+    public JwtDecoder jwtDecoder(JwtKeyRing jwtKeyRing,
+                                 @Value("${security.jwt.cache-size:10000}") long cacheSize,
+                                 MeterRegistry meterRegistry,
+                                 TokenRevocationService tokenRevocationService) {
+        JwtDecoder verifyingDecoder = new CachingJwtDecoder(jwtKeyRing.createDecoder(), cacheSize, meterRegistry);
+        return token -> {
+            Jwt jwt = verifyingDecoder.decode(token);
+            if (tokenRevocationService.isRevoked(jwt.getId())) {
+                throw new BadJwtException("Token has been revoked, please log in again");
+            }
+            return jwt;
+        };
     }
 
     /**
      * Hjälper Spring att förstå hur den ska läsa informationen inuti en token,
      * så att den vet vilka rättigheter (roles/scopes) användaren har.
+     * <p>
+     * Principal byggs som en CustomUserDetails direkt från token (subject, uid, email och role),
+     * så att controllers och säkerhetskontroller får användarens id utan att läsa från databasen.
+     * Token som saknar uid (utfärdade före denna ändring) avvisas och användaren får logga in igen.
+     * <p>
+     * Alias (subject) och email gäller när token utfärdades. Byter användaren alias har inlägg som skapas
+     * med en äldre token fortfarande det gamla aliaset i svaret och i SSE-händelsen, tills token går ut
+     * (högst 1 timme, se TokenService) eller klienten hämtar en ny via /auth/refresh. Det är ett accepterat
+     * fönster: inlägget sparas med användarens id, så det som läses från databasen efteråt har alltid
+     * det nya aliaset. Id och roll ändras aldrig av UserService.updateUser.
      *
-     * @return En översättare som gör om informationen i en JWT till rättigheter som Spring Security förstår.
+     * @return En översättare som gör om informationen i en JWT till en inloggad användare med rättigheter.
      */
     @Bean
-    public JwtAuthenticationConverter jwtAuthenticationConverter() {
+    public Converter<Jwt, AbstractAuthenticationToken> jwtAuthenticationConverter() {
         JwtGrantedAuthoritiesConverter converter = new JwtGrantedAuthoritiesConverter();
         converter.setAuthorityPrefix("");
         converter.setAuthoritiesClaimName("scope");
 
-        JwtAuthenticationConverter authenticationConverter = new JwtAuthenticationConverter();
-        authenticationConverter.setJwtGrantedAuthoritiesConverter(converter);
-        return authenticationConverter;
+        return jwt -> {
+            Object userId = jwt.getClaim(TokenService.USER_ID_CLAIM);
+            if (!(userId instanceof Number id)) {
+                throw new InvalidBearerTokenException("Token is missing the user id, please log in again");
+            }
+
+            CustomUserDetails userDetails = new CustomUserDetails(
+                    id.longValue(),
+                    jwt.getSubject(),
+                    jwt.getClaimAsString(TokenService.EMAIL_CLAIM),
+                    jwt.getClaimAsString(TokenService.ROLE_CLAIM)
+            );
+            return UsernamePasswordAuthenticationToken.authenticated(userDetails, jwt, converter.convert(jwt));
+        };
     }
 }
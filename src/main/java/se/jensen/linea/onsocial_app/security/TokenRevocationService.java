@@ -0,0 +1,129 @@
+package se.jensen.linea.onsocial_app.security;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import se.jensen.linea.onsocial_app.model.RevokedToken;
+import se.jensen.linea.onsocial_app.repository.RevokedTokenRepository;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TokenRevocationService håller reda på JWT access tokens som har spärrats, t.ex. vid utloggning.
+ * <p>
+ * Spärrarna ligger i minnet, så att kontrollen i varje anrop aldrig går till databasen.
+ * Ett Bloom-filter ligger framför den exakta mängden: nästan alla token är inte spärrade och
+ * avgörs då av filtret direkt, bara en möjlig träff slås upp i mängden.
+ * <p>
+ * Spärrarna sparas även i databasen (revoked_tokens), så att de finns kvar efter en omstart.
+ * De läses in vid start och sedan regelbundet, så att spärrar från andra instanser också kommer med.
+ * En spärr behövs bara tills token går ut, därefter rensas den bort och filtret byggs om.
+ */
+@Service
+public class TokenRevocationService implements ApplicationRunner {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final Clock clock;
+    private final int expectedRevocations;
+    // jti -> expiry of the revoked token
+    private final Map<String, Instant> revoked = new ConcurrentHashMap<>();
+    private volatile BloomFilter filter;
+
+    @Autowired
+    public TokenRevocationService(RevokedTokenRepository revokedTokenRepository,
+                                  @Value("${security.jwt.revocation.expected-size:10000}") int expectedRevocations,
+                                  MeterRegistry meterRegistry) {
+        this(revokedTokenRepository, expectedRevocations, meterRegistry, Clock.systemUTC());
+    }
+
+    TokenRevocationService(RevokedTokenRepository revokedTokenRepository,
+                           int expectedRevocations,
+                           MeterRegistry meterRegistry,
+                           Clock clock) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.expectedRevocations = expectedRevocations;
+        this.clock = clock;
+        this.filter = BloomFilter.create(expectedRevocations, FALSE_POSITIVE_RATE);
+
+        Gauge.builder("auth.token.revoked", revoked, Map::size)
+                .description("Revoked access tokens that have not expired yet")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Läser in sparade spärrar när applikationen startar.
+     *
+     * @param args Startargument (används inte).
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        refresh();
+    }
+
+    /**
+     * Kontrollerar om en token är spärrad. Körs vid varje anrop med token, utan databasfråga.
+     *
+     * @param jti Tokens id (claim "jti"), null för token som saknar id.
+     * @return true om token är spärrad.
+     */
+    public boolean isRevoked(String jti) {
+        if (jti == null || !filter.mightContain(jti)) {
+            return false;
+        }
+        return revoked.containsKey(jti);
+    }
+
+    /**
+     * Spärrar en token tills den går ut.
+     *
+     * @param jti       Tokens id (claim "jti").
+     * @param expiresAt Tokens utgångstid (claim "exp").
+     */
+    public void revoke(String jti, Instant expiresAt) {
+        if (!expiresAt.isAfter(clock.instant())) {
+            // Already expired, the decoder rejects it anyway
+            return;
+        }
+        revokedTokenRepository.save(new RevokedToken(jti, expiresAt));
+        // Under the same lock as the filter swap in refresh(), so the jti cannot land in a discarded filter
+        synchronized (this) {
+            revoked.put(jti, expiresAt);
+            filter.put(jti);
+        }
+    }
+
+    /**
+     * Rensar utgångna spärrar, läser in spärrar från andra instanser och bygger om filtret.
+     * Filtret kan inte ta bort värden, därför byggs ett nytt som ersätter det gamla.
+     */
+    @Scheduled(fixedDelayString = "${security.jwt.revocation.refresh-interval:30s}",
+            initialDelayString = "${security.jwt.revocation.refresh-interval:30s}")
+    public void refresh() {
+        Instant now = clock.instant();
+        revokedTokenRepository.deleteExpired(now);
+        Map<String, Instant> stored = new HashMap<>();
+        for (RevokedToken token : revokedTokenRepository.findByExpiresAtAfter(now)) {
+            stored.put(token.getJti(), token.getExpiresAt());
+        }
+
+        synchronized (this) {
+            revoked.values().removeIf(expiresAt -> !expiresAt.isAfter(now));
+            revoked.putAll(stored);
+
+            BloomFilter rebuilt = BloomFilter.create(Math.max(expectedRevocations, revoked.size() * 2L), FALSE_POSITIVE_RATE);
+            revoked.keySet().forEach(rebuilt::put);
+            filter = rebuilt;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package se.jensen.linea.onsocial_app.service;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.jensen.linea.onsocial_app.DTO.AliasSuggestionDTO;
+import se.jensen.linea.onsocial_app.config.ReplicaRoutingDataSource;
+import se.jensen.linea.onsocial_app.repository.UserRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * AliasAutocompleteService ger förslag på alias medan användaren skriver en @mention.
+ * <p>
+ * Alla alias ligger i minnet i en sorterad map (skip list) med alias i gemener som nyckel.
+ * Alla alias med ett visst prefix ligger då i följd, så de första N förslagen hämtas genom att
+ * hoppa till prefixet och läsa N poster, utan databasfråga och oavsett hur många användare som finns.
+ * <p>
+ * Indexet byggs vid start genom att strömma users-tabellen och hålls uppdaterat när en användare
+ * skapas, ändras eller raderas, först efter att transaktionen har committats. Det byggs också om regelbundet, så att ändringar
+ * gjorda av andra instanser kommer med.
+ * <p>
+ * Sökning som tål stavfel (search) går istället till databasen och använder pg_trgm.
+ */
+@Service
+public class AliasAutocompleteService implements ApplicationRunner {
+
+    /**
+     * Antal förslag om klienten inte anger något.
+     */
+    public static final int DEFAULT_SUGGESTIONS = 10;
+
+    /**
+     * Max antal förslag per anrop.
+     */
+    public static final int MAX_SUGGESTIONS = 50;
+
+    private final UserRepository userRepository;
+    private final TransactionTemplate readOnlyTransaction;
+
+    private volatile AliasIndex index = new AliasIndex();
+    // Changes made while a rebuild streams the table, replayed on the new index before it is swapped in
+    private Map<Long, Optional<AliasSuggestionDTO>> changedDuringRebuild;
+
+    public AliasAutocompleteService(UserRepository userRepository, PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Bygger indexet när applikationen startar.
+     *
+     * @param args Startargument (används inte).
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        rebuild();
+    }
+
+    /**
+     * Förslag på alias som börjar med prefixet, i bokstavsordning och utan hänsyn till versaler.
+     *
+     * @param prefix Det användaren har skrivit efter @, tomt ger de första aliasen.
+     * @param limit  Antal förslag (standard 10, max 50).
+     * @return Högst limit förslag.
+     */
+    public List<AliasSuggestionDTO> complete(String prefix, Integer limit) {
+        int max = limit == null ? DEFAULT_SUGGESTIONS : Math.max(1, Math.min(limit, MAX_SUGGESTIONS));
+        String from = prefix == null ? "" : prefix.toLowerCase(Locale.ROOT);
+
+        List<AliasSuggestionDTO> suggestions = new ArrayList<>(max);
+        // Every key starting with the prefix sorts between "prefix" and "prefix￿"
+        for (AliasSuggestionDTO suggestion : index.byKey.subMap(from, true, from + Character.MAX_VALUE, false).values()) {
+            suggestions.add(suggestion);
+            if (suggestions.size() == max) {
+                break;
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Sökning på alias som tål stavfel, med trigram-likhet i PostgreSQL.
+     * Alias som börjar med söktexten kommer först, sedan de mest lika.
+     *
+     * @param query Söktext.
+     * @param limit Antal träffar (standard 10, max 50).
+     * @return Högst limit träffar.
+     * @throws IllegalArgumentException om söktexten är tom eller för lång.
+     */
+    @Transactional(readOnly = true)
+    public List<AliasSuggestionDTO> search(String query, Integer limit) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query is not allowed to be empty");
+        }
+        if (query.length() > PostService.MAX_QUERY_LENGTH) {
+            throw new IllegalArgumentException("Search query must be at most " + PostService.MAX_QUERY_LENGTH + " characters");
+        }
+        int max = limit == null ? DEFAULT_SUGGESTIONS : Math.max(1, Math.min(limit, MAX_SUGGESTIONS));
+        String lower = query.strip().toLowerCase(Locale.ROOT);
+
+        return userRepository.searchByAlias(lower, UserService.likePrefix(lower), max).stream()
+                .map(hit -> new AliasSuggestionDTO(hit.getId(), hit.getAlias(), hit.getProfilePicture()))
+                .toList();
+    }
+
+    /**
+     * Lägger till eller uppdaterar en användare i indexet.
+     *
+     * @param suggestion Användarens id, alias och profilbild.
+     */
+    public synchronized void put(AliasSuggestionDTO suggestion) {
+        index.put(suggestion);
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.put(suggestion.id(), Optional.of(suggestion));
+        }
+    }
+
+    /**
+     * Lägger till en sparad användare i indexet när transaktionen har committats,
+     * så att en registrering som rullas tillbaka aldrig föreslås.
+     *
+     * @param event Den sparade användaren.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserSaved(UserSavedEvent event) {
+        put(event.suggestion());
+    }
+
+    /**
+     * Tar bort en användare ur indexet.
+     *
+     * @param userId Användarens id.
+     */
+    public synchronized void remove(Long userId) {
+        index.remove(userId);
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.put(userId, Optional.empty());
+        }
+    }
+
+    /**
+     * Bygger ett nytt index från users-tabellen och ersätter det gamla.
+     * Tabellen läses från primärdatabasen, så att en replik som ligger efter inte tar bort nya användare ur indexet.
+     */
+    @Scheduled(fixedDelayString = "${users.aliases.rebuild-interval:10m}",
+            initialDelayString = "${users.aliases.rebuild-interval:10m}")
+    public void rebuild() {
+        AliasIndex next = new AliasIndex();
+        synchronized (this) {
+            changedDuringRebuild = new HashMap<>();
+        }
+        try {
+            ReplicaRoutingDataSource.readFromPrimary(() -> readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<AliasSuggestionDTO> users = userRepository.streamAliasSuggestions()) {
+                    users.forEach(next::put);
+                }
+            }));
+            synchronized (this) {
+                // A streamed row may be older than a change made while streaming
+                changedDuringRebuild.forEach((userId, change) -> change.ifPresentOrElse(next::put, () -> next.remove(userId)));
+                index = next;
+            }
+        } finally {
+            synchronized (this) {
+                changedDuringRebuild = null;
+            }
+        }
+    }
+
+    /**
+     * Sorterad map från nyckel till förslag, och varje användares nuvarande nyckel
+     * så att ett gammalt alias kan tas bort när det ändras.
+     */
+    private static final class AliasIndex {
+
+        private final NavigableMap<String, AliasSuggestionDTO> byKey = new ConcurrentSkipListMap<>();
+        private final Map<Long, String> keyById = new ConcurrentHashMap<>();
+
+        void put(AliasSuggestionDTO suggestion) {
+            String key = key(suggestion.alias());
+            String previous = keyById.put(suggestion.id(), key);
+            if (previous != null && !previous.equals(key)) {
+                byKey.remove(previous);
+            }
+            byKey.put(key, suggestion);
+        }
+
+        void remove(Long userId) {
+            String key = keyById.remove(userId);
+            if (key != null) {
+                byKey.remove(key);
+            }
+        }
+
+        // Lower case first for case-insensitive prefixes, the exact alias keeps "Linea" and "linea" apart
+        private static String key(String alias) {
+            return alias.toLowerCase(Locale.ROOT) + '\u0000' + alias;
+        }
+    }
+}
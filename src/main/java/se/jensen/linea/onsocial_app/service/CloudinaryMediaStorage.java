@@ -0,0 +1,41 @@
+package se.jensen.linea.onsocial_app.service;
+
+import com.cloudinary.Cloudinary;
+import com.cloudinary.utils.ObjectUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Sparar bilder i Cloudinary. Används om media.storage är "cloudinary" eller inte är satt.
+ * <p>
+ * Filen skickas som en File, så att Cloudinarys HTTP-klient strömmar den från disk.
+ * Filnamnet utan ändelse blir public_id, så att URL:en slutar på filnamnet.
+ */
+@Service
+@ConditionalOnProperty(name = "media.storage", havingValue = "cloudinary", matchIfMissing = true)
+public class CloudinaryMediaStorage implements MediaStorage {
+
+    private final Cloudinary cloudinary;
+
+    public CloudinaryMediaStorage(Cloudinary cloudinary) {
+        this.cloudinary = cloudinary;
+    }
+
+    @Override
+    public String store(Path file, String folder, String name) throws IOException {
+        int dot = name.lastIndexOf('.');
+        Map uploadResult = cloudinary.uploader().upload(
+                file.toFile(),
+                ObjectUtils.asMap(
+                        "folder", folder,
+                        "public_id", dot < 0 ? name : name.substring(0, dot),
+                        "resource_type", "image"
+                )
+        );
+        return (String) uploadResult.get("secure_url");
+    }
+}
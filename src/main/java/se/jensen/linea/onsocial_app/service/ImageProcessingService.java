@@ -0,0 +1,347 @@
+package se.jensen.linea.onsocial_app.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import se.jensen.linea.onsocial_app.mapper.ProfilePictureMapper;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ImageProcessingService bearbetar uppladdade bilder innan de sparas.
+ * <p>
+ * Bilden avkodas, vrids rätt enligt EXIF (mobilbilder sparas ofta liggande med en rotation i EXIF),
+ * förminskas så att största sidan är högst maxDimension och kodas om som JPEG (PNG om bilden har
+ * genomskinlighet). Ingen metadata följer med, så EXIF med t.ex. GPS-position och kamera tas bort.
+ * Dessutom skapas miniatyrer i storlekarna i ProfilePictureMapper.THUMBNAIL_SIZES.
+ * <p>
+ * Bilden och miniatyrerna kodas parallellt i en egen trådpool. Högst lika många bilder som poolen har
+ * trådar avkodas samtidigt, eftersom en avkodad bild tar mycket minne (4 byte per pixel).
+ * Mycket stora bilder avkodas med subsampling, och bilder med fler än maxPixels pixlar avvisas.
+ */
+@Service
+public class ImageProcessingService implements AutoCloseable {
+
+    private static final int SOI = 0xFFD8;
+    private static final int SOS = 0xFFDA;
+    private static final int EOI = 0xFFD9;
+    private static final int APP1 = 0xFFE1;
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+    private final int maxDimension;
+    private final long maxPixels;
+    private final float jpegQuality;
+    private final Semaphore decodePermits;
+    private final ExecutorService encoders;
+    private final Timer processTimer;
+    private final Counter originalBytes;
+    private final Counter processedBytes;
+
+    public ImageProcessingService(@Value("${media.image.max-dimension:1280}") int maxDimension,
+                                  @Value("${media.image.max-pixels:50000000}") long maxPixels,
+                                  @Value("${media.image.jpeg-quality:0.85}") float jpegQuality,
+                                  @Value("${media.image.threads:0}") int threads,
+                                  MeterRegistry meterRegistry) {
+        this.maxDimension = maxDimension;
+        this.maxPixels = maxPixels;
+        this.jpegQuality = jpegQuality;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.decodePermits = new Semaphore(poolSize);
+        // Unbounded queue, but the permits allow at most poolSize images with a few variants each
+        this.encoders = Executors.newFixedThreadPool(poolSize, namedThreads());
+
+        this.processTimer = Timer.builder("media.image.process")
+                .description("Time to decode, resize and encode an uploaded image with its thumbnails")
+                .register(meterRegistry);
+        this.originalBytes = Counter.builder("media.image.bytes")
+                .description("Size of uploaded images before and after processing")
+                .baseUnit("bytes")
+                .tag("stage", "original")
+                .register(meterRegistry);
+        this.processedBytes = Counter.builder("media.image.bytes")
+                .description("Size of uploaded images before and after processing")
+                .baseUnit("bytes")
+                .tag("stage", "processed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * En bearbetad bild.
+     *
+     * @param extension  "jpg" eller "png".
+     * @param image      Den förminskade bilden.
+     * @param thumbnails Miniatyrerna per storlek.
+     */
+    public record ProcessedImage(String extension, Path image, Map<Integer, Path> thumbnails) {
+    }
+
+    /**
+     * Bearbetar en bild och skriver resultatet som filer i en katalog.
+     *
+     * @param source    Den uppladdade bilden.
+     * @param directory Katalog som filerna skrivs till, anroparen tar bort den efteråt.
+     * @return Den bearbetade bilden och miniatyrerna.
+     * @throws IllegalArgumentException om filen inte är en bild som går att läsa eller är för stor.
+     * @throws IOException              om filerna inte kunde läsas eller skrivas.
+     */
+    public ProcessedImage process(Path source, Path directory) throws IOException {
+        try {
+            decodePermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to process image");
+        }
+        long start = System.nanoTime();
+        try {
+            BufferedImage decoded = decode(source);
+            boolean alpha = decoded.getColorModel().hasAlpha();
+            String extension = alpha ? "png" : "jpg";
+            BufferedImage image = scale(decoded, maxDimension, alpha);
+
+            Path imageFile = directory.resolve("image." + extension);
+            List<Callable<Path>> tasks = new ArrayList<>();
+            tasks.add(() -> encode(image, extension, imageFile));
+            for (int size : ProfilePictureMapper.THUMBNAIL_SIZES) {
+                Path thumbnailFile = directory.resolve("thumbnail_" + size + "." + extension);
+                tasks.add(() -> encode(scale(image, size, alpha), extension, thumbnailFile));
+            }
+            List<Path> encoded = await(encoders.invokeAll(tasks));
+
+            Map<Integer, Path> thumbnails = new LinkedHashMap<>();
+            for (int i = 0; i < ProfilePictureMapper.THUMBNAIL_SIZES.size(); i++) {
+                thumbnails.put(ProfilePictureMapper.THUMBNAIL_SIZES.get(i), encoded.get(i + 1));
+            }
+
+            originalBytes.increment(Files.size(source));
+            for (Path file : encoded) {
+                processedBytes.increment(Files.size(file));
+            }
+            return new ProcessedImage(extension, imageFile, thumbnails);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing image");
+        } finally {
+            decodePermits.release();
+            processTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        encoders.shutdown();
+    }
+
+    private BufferedImage decode(Path source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IllegalArgumentException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IllegalArgumentException("Image is too large: " + width + "x" + height + " pixels");
+                }
+                // Skipping pixels while decoding saves memory, twice the final size is kept for a smooth downscale
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.max(width, height) / (2 * maxDimension));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                BufferedImage image = reader.read(0, param);
+                return orient(image, exifOrientation(source));
+            } catch (IIOException e) {
+                throw new IllegalArgumentException("Could not read image: " + e.getMessage(), e);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private Path encode(BufferedImage image, String extension, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg".equals(extension) ? "jpeg" : "png").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpg".equals(extension)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            }
+            writer.setOutput(output);
+            // No metadata is written, EXIF and comments from the upload are left behind
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return target;
+    }
+
+    // Halves the size until close to the target, a single bilinear step would skip most pixels and alias
+    private static BufferedImage scale(BufferedImage source, int maxSize, boolean alpha) {
+        double ratio = Math.min(1.0, (double) maxSize / Math.max(source.getWidth(), source.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        BufferedImage current = source;
+        do {
+            int width = Math.max(targetWidth, current.getWidth() / 2);
+            int height = Math.max(targetHeight, current.getHeight() / 2);
+            AffineTransform transform = AffineTransform.getScaleInstance(
+                    (double) width / current.getWidth(), (double) height / current.getHeight());
+            current = draw(current, width, height, transform, alpha);
+        } while (current.getWidth() != targetWidth || current.getHeight() != targetHeight);
+        return current;
+    }
+
+    // Turns the pixels the way EXIF orientation 2-8 says the image is meant to be shown
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, w);
+            default -> null;
+        };
+        if (transform == null) {
+            return image;
+        }
+        boolean swap = orientation >= 5;
+        return draw(image, swap ? h : w, swap ? w : h, transform, image.getColorModel().hasAlpha());
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, AffineTransform transform, boolean alpha) {
+        BufferedImage target = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    // Scans the JPEG segments before the image data for EXIF. ImageIO's JPEG metadata is not used,
+    // it rejects the common camera layout with EXIF (APP1) before the JFIF header (APP0).
+    private static int exifOrientation(Path image) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(image)))) {
+            if (input.readUnsignedShort() != SOI) {
+                return 1;
+            }
+            while (true) {
+                int marker = input.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00 || marker == SOS || marker == EOI) {
+                    return 1;
+                }
+                int length = input.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return 1;
+                }
+                if (marker == APP1) {
+                    int orientation = exifOrientation(input.readNBytes(length));
+                    if (orientation != 0) {
+                        return orientation;
+                    }
+                } else {
+                    input.skipNBytes(length);
+                }
+            }
+        } catch (EOFException e) {
+            return 1;
+        }
+    }
+
+    // EXIF in APP1 is "Exif\0\0", a TIFF header and the first directory (IFD0) where orientation is
+    static int exifOrientation(byte[] app1) {
+        if (app1.length < 14 || app1[0] != 'E' || app1[1] != 'x' || app1[2] != 'i' || app1[3] != 'f') {
+            return 0;
+        }
+        try {
+            ByteBuffer tiff = ByteBuffer.wrap(app1, 6, app1.length - 6).slice();
+            tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            int directory = tiff.getInt(4);
+            int entries = tiff.getShort(directory) & 0xffff;
+            for (int i = 0; i < entries; i++) {
+                int entry = directory + 2 + i * 12;
+                if ((tiff.getShort(entry) & 0xffff) == EXIF_ORIENTATION_TAG) {
+                    int orientation = tiff.getShort(entry + 8) & 0xffff;
+                    return orientation >= 1 && orientation <= 8 ? orientation : 0;
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // Truncated or corrupt EXIF, show the image as stored
+        }
+        return 0;
+    }
+
+    private static List<Path> await(List<Future<Path>> futures) throws IOException, InterruptedException {
+        List<Path> results = new ArrayList<>(futures.size());
+        for (Future<Path> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException("Image processing failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private static ThreadFactory namedThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "image-process-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
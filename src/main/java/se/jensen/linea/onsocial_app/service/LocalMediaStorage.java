@@ -0,0 +1,83 @@
+package se.jensen.linea.onsocial_app.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Sparar bilder i en katalog på den här noden (media.local.root). Används om media.storage är "local",
+ * t.ex. för lasttester utan nätverk eller för att servera media från egna servrar.
+ * <p>
+ * Filen kopieras med FileChannel.transferTo, som låter operativsystemet kopiera utan att datat
+ * passerar heapen. Varje fil har ett unikt namn och ändras aldrig, så MediaController kan låta
+ * webbläsare och CDN cacha den i ett år.
+ */
+@Service
+@ConditionalOnProperty(name = "media.storage", havingValue = "local")
+public class LocalMediaStorage implements MediaStorage {
+
+    private static final Pattern FOLDER = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}(\\.[A-Za-z0-9]{1,10})?");
+
+    private final Path root;
+    private final String baseUrl;
+
+    public LocalMediaStorage(@Value("${media.local.root:media}") String root,
+                             @Value("${media.local.base-url:http://localhost:8080}") String baseUrl) throws IOException {
+        this.root = Files.createDirectories(Path.of(root).toAbsolutePath().normalize());
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    @Override
+    public String store(Path file, String folder, String name) throws IOException {
+        if (!FOLDER.matcher(folder).matches()) {
+            throw new IllegalArgumentException("Invalid media folder: " + folder);
+        }
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid media file name: " + name);
+        }
+        Path directory = Files.createDirectories(root.resolve(folder));
+        Path target = directory.resolve(name);
+
+        // Written under a temporary name and moved in place, a reader never sees a half written file
+        Path partial = directory.resolve(name + ".part");
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+
+        return baseUrl + "/media/" + folder + "/" + name;
+    }
+
+    /**
+     * Hittar en sparad fil. Namn som kan leda utanför katalogen (t.ex. "..") ger ingen träff.
+     *
+     * @param folder Mappen i URL:en.
+     * @param name   Filnamnet i URL:en.
+     * @return Filen, eller tom om den inte finns.
+     */
+    public Optional<Path> find(String folder, String name) {
+        if (!FOLDER.matcher(folder).matches() || !NAME.matcher(name).matches()) {
+            return Optional.empty();
+        }
+        Path file = root.resolve(folder).resolve(name);
+        return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+}
@@ -0,0 +1,29 @@
+package se.jensen.linea.onsocial_app.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * MediaStorage sparar uppladdade bilder och ger tillbaka en publik URL som kan sparas i databasen.
+ * <p>
+ * Vilken implementation som används väljs med media.storage:
+ * "cloudinary" (standard) laddar upp till Cloudinary, "local" sparar filerna på den här noden
+ * och serverar dem själv (se LocalMediaStorage och MediaController).
+ */
+public interface MediaStorage {
+
+    /**
+     * Sparar en fil. Filen läses från disk och behöver aldrig ligga i minnet i sin helhet.
+     * Den som anropar äger filen och tar bort den efteråt.
+     * <p>
+     * Filnamnet syns sist i den publika URL:en, efter mappen, och URL:en börjar med lagringens bas-URL,
+     * så att URL:er till filer med närliggande namn kan räknas fram (se ProfilePictureMapper).
+     *
+     * @param file   Filen som ska sparas.
+     * @param folder Mapp att spara i, t.ex. "profile_pictures".
+     * @param name   Unikt filnamn med ändelse, t.ex. "{id}.jpg", väljs av den som anropar.
+     * @return Publik URL till den sparade filen.
+     * @throws IOException om filen inte kunde sparas.
+     */
+    String store(Path file, String folder, String name) throws IOException;
+}
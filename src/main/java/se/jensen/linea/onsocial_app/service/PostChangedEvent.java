@@ -0,0 +1,10 @@
+package se.jensen.linea.onsocial_app.service;
+
+/**
+ * Händelse som publiceras när ett inlägg har uppdaterats eller raderats.
+ * PostService tömmer inläggets cachepost först när transaktionen har committats.
+ *
+ * @param postId Inläggets id.
+ */
+public record PostChangedEvent(Long postId) {
+}
@@ -0,0 +1,12 @@
+package se.jensen.linea.onsocial_app.service;
+
+import se.jensen.linea.onsocial_app.DTO.PostResponseDTO;
+
+/**
+ * Händelse som publiceras när ett nytt inlägg har skapats.
+ * Lyssnare som använder @TransactionalEventListener får den först när transaktionen har committats.
+ *
+ * @param post Det nya inlägget.
+ */
+public record PostCreatedEvent(PostResponseDTO post) {
+}
@@ -0,0 +1,205 @@
+package se.jensen.linea.onsocial_app.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PostFeedService skickar nya inlägg live till klienter via Server-Sent Events (SSE).
+ * Klienten behöver alltså inte fråga /posts/findall om och om igen för att se nya inlägg.
+ * <p>
+ * En ansluten klient håller ingen tråd medan den väntar, SseEmitter använder servletens async-stöd.
+ * Varje prenumerant har en liten buffert. Om klienten är för långsam slängs de äldsta händelserna
+ * (drop-oldest) så att en långsam klient aldrig kan fylla minnet eller bromsa de andra.
+ * En liten gemensam trådpool skickar händelserna.
+ */
+@Service
+public class PostFeedService {
+
+    /**
+     * Max antal väntande händelser per prenumerant.
+     */
+    static final int BUFFER_SIZE = 64;
+
+    /**
+     * Hur länge en anslutning hålls öppen innan klienten får återansluta (EventSource gör det automatiskt).
+     */
+    static final long EMITTER_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * Hur ofta en "ping" skickas, håller anslutningen vid liv genom proxies och upptäcker döda klienter.
+     */
+    static final long HEARTBEAT_SECONDS = 30;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ObjectMapper objectMapper;
+    private final ExecutorService sender;
+    private final ScheduledExecutorService heartbeat;
+    private final Timer fanOutTimer;
+    private final Counter droppedEvents;
+
+    public PostFeedService(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.sender = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), namedThreads("post-feed-sender-"));
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(namedThreads("post-feed-heartbeat-"));
+        this.heartbeat.scheduleAtFixedRate(this::sendHeartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+
+        meterRegistry.gaugeCollectionSize("posts.live.subscribers", Tags.empty(), subscribers);
+        this.fanOutTimer = Timer.builder("posts.live.fanout")
+                .description("Time to queue a new post for every live subscriber")
+                .register(meterRegistry);
+        this.droppedEvents = Counter.builder("posts.live.dropped")
+                .description("Events dropped because a subscriber's buffer was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registrerar en ny prenumerant.
+     *
+     * @return En SseEmitter som Spring håller öppen mot klienten.
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        Subscriber subscriber = new Subscriber(emitter);
+
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Skickar ett nytt inlägg till alla prenumeranter när transaktionen som skapade det har committats.
+     * Inlägget görs om till JSON en gång och läggs sedan i varje prenumerants buffert.
+     *
+     * @param event Händelsen med det nya inlägget.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onPostCreated(PostCreatedEvent event) {
+        fanOutTimer.record(() -> {
+            String json = objectMapper.writeValueAsString(event.post());
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(SseEmitter.event()
+                        .id(String.valueOf(event.post().id()))
+                        .name("post")
+                        .data(json));
+            }
+        });
+    }
+
+    /**
+     * @return Antal anslutna prenumeranter.
+     */
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    private void sendHeartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(SseEmitter.event().comment("ping"));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        sender.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * En ansluten klient med sin egen begränsade buffert.
+     * Högst en sändning per prenumerant körs åt gången, så händelserna kommer i ordning.
+     */
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final ArrayDeque<SseEmitter.SseEventBuilder> buffer = new ArrayDeque<>(BUFFER_SIZE);
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void offer(SseEmitter.SseEventBuilder event) {
+            synchronized (buffer) {
+                if (buffer.size() == BUFFER_SIZE) {
+                    // Drop the oldest event so a slow client cannot hold memory
+                    buffer.pollFirst();
+                    droppedEvents.increment();
+                }
+                buffer.addLast(event);
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                SseEmitter.SseEventBuilder event;
+                while ((event = poll()) != null) {
+                    emitter.send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client is gone, the container completes the emitter
+                subscribers.remove(this);
+                return;
+            } finally {
+                draining.set(false);
+            }
+
+            // An event may have arrived after the last poll but before the flag was reset
+            if (!isEmpty()) {
+                scheduleDrain();
+            }
+        }
+
+        private SseEmitter.SseEventBuilder poll() {
+            synchronized (buffer) {
+                return buffer.pollFirst();
+            }
+        }
+
+        private boolean isEmpty() {
+            synchronized (buffer) {
+                return buffer.isEmpty();
+            }
+        }
+    }
+}
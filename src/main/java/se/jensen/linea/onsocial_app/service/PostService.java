@@ -1,17 +1,36 @@
 package se.jensen.linea.onsocial_app.service;
 
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import se.jensen.linea.onsocial_app.DTO.CursorPageDTO;
 import se.jensen.linea.onsocial_app.DTO.PostRequestDTO;
 import se.jensen.linea.onsocial_app.DTO.PostResponseDTO;
+import se.jensen.linea.onsocial_app.config.CacheConfig;
+import se.jensen.linea.onsocial_app.config.ReplicaRoutingDataSource;
+import se.jensen.linea.onsocial_app.mapper.CursorMapper;
 import se.jensen.linea.onsocial_app.mapper.PostMapper;
 import se.jensen.linea.onsocial_app.model.Post;
 import se.jensen.linea.onsocial_app.model.User;
+import se.jensen.linea.onsocial_app.repository.PostListStamp;
 import se.jensen.linea.onsocial_app.repository.PostRepository;
+import se.jensen.linea.onsocial_app.repository.PostSearchHit;
 import se.jensen.linea.onsocial_app.repository.UserRepository;
 
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * PostService innehåller alla metoder vi behöver anropa i PostController.
@@ -29,25 +48,154 @@ import java.util.List;
  */
 @Service
 public class PostService {
+    /**
+     * Antal inlägg per sida om klienten inte anger något.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * Max antal inlägg per sida, håller minnet per request begränsat.
+     */
+    public static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * Max längd på en söktext.
+     */
+    public static final int MAX_QUERY_LENGTH = 200;
+
     private final PostRepository postRepository;
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public PostService(PostRepository postRepository, UserRepository userRepository) {
+    public PostService(PostRepository postRepository,
+                       UserRepository userRepository,
+                       ApplicationEventPublisher eventPublisher) {
         this.postRepository = postRepository;
         this.userRepository = userRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
-     * Hämta alla inlägg i databasen.
+     * Hämta en sida av flödet, nyaste inlägg först.
+     * Sidorna hämtas med en seek-fråga på (created_at, id) så sida N kostar lika mycket som sida 1.
      *
-     * @return Lista av PostResponseDTO.
+     * @param limit Antal inlägg per sida (standard 20, max 100).
+     * @param next  Cursor från föregående sida, eller null för första sidan.
+     * @return En sida av PostResponseDTO och cursor till nästa sida.
+     * @throws IllegalArgumentException om cursorn inte är giltig.
      */
     @Transactional(readOnly = true)
-    public List<PostResponseDTO> findAll() {
-        return postRepository.findAll()
-                .stream()
-                .map(PostMapper::toDTO)
+    public CursorPageDTO<PostResponseDTO> findAll(Integer limit, String next) {
+        int pageSize = pageSize(limit);
+        // Fetch one extra row to know if there is a next page
+        Limit fetchLimit = Limit.of(pageSize + 1);
+
+        List<PostResponseDTO> posts;
+        if (next == null || next.isBlank()) {
+            posts = postRepository.findFeed(fetchLimit);
+        } else {
+            CursorMapper.Cursor cursor = CursorMapper.decode(next);
+            posts = postRepository.findFeedAfter(cursor.created(), cursor.id(), fetchLimit);
+        }
+
+        boolean hasMore = posts.size() > pageSize;
+        List<PostResponseDTO> page = hasMore ? posts.subList(0, pageSize) : posts;
+
+        String nextCursor = null;
+        if (hasMore) {
+            PostResponseDTO last = page.get(page.size() - 1);
+            nextCursor = CursorMapper.encode(last.created(), last.id());
+        }
+
+        return new CursorPageDTO<>(List.copyOf(page), nextCursor);
+    }
+
+    /**
+     * Fulltextsökning i inläggens titel och innehåll, bäst rankade träffar först.
+     * Sökningen använder ett GIN-index i PostgreSQL istället för LIKE '%q%',
+     * och sidorna hämtas med en seek-fråga på (rank, id).
+     *
+     * @param query Söktext.
+     * @param limit Antal träffar per sida (standard 20, max 100).
+     * @param next  Cursor från föregående sida, eller null för första sidan.
+     * @return En sida av PostResponseDTO och cursor till nästa sida.
+     * @throws IllegalArgumentException om söktexten är tom eller för lång, eller om cursorn inte är giltig.
+     */
+    @Transactional(readOnly = true)
+    public CursorPageDTO<PostResponseDTO> search(String query, Integer limit, String next) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query is not allowed to be empty");
+        }
+        if (query.length() > MAX_QUERY_LENGTH) {
+            throw new IllegalArgumentException("Search query must be at most " + MAX_QUERY_LENGTH + " characters");
+        }
+
+        int pageSize = pageSize(limit);
+
+        List<PostSearchHit> hits;
+        if (next == null || next.isBlank()) {
+            hits = postRepository.search(query, pageSize + 1);
+        } else {
+            CursorMapper.RankCursor cursor = CursorMapper.decodeRank(next);
+            hits = postRepository.searchAfter(query, cursor.rank(), cursor.id(), pageSize + 1);
+        }
+
+        boolean hasMore = hits.size() > pageSize;
+        List<PostSearchHit> page = hasMore ? hits.subList(0, pageSize) : hits;
+        if (page.isEmpty()) {
+            return new CursorPageDTO<>(List.of(), null);
+        }
+
+        // Load the posts for this page in one query and keep the ranked order
+        Map<Long, PostResponseDTO> postsById = new HashMap<>();
+        for (PostResponseDTO post : postRepository.findDtosByIdIn(page.stream().map(PostSearchHit::getId).toList())) {
+            postsById.put(post.id(), post);
+        }
+        List<PostResponseDTO> items = page.stream()
+                .map(hit -> postsById.get(hit.getId()))
+                .filter(Objects::nonNull)
                 .toList();
+
+        String nextCursor = null;
+        if (hasMore) {
+            PostSearchHit last = page.get(page.size() - 1);
+            nextCursor = CursorMapper.encodeRank(last.getRank(), last.getId());
+        }
+
+        return new CursorPageDTO<>(items, nextCursor);
+    }
+
+    /**
+     * Exportera alla inlägg, ett i taget.
+     * Inläggen strömmas från databasen så minnesanvändningen är densamma oavsett hur många inlägg som finns.
+     *
+     * @param consumer Tar emot varje inlägg, t.ex. för att skriva det direkt till HTTP-svaret.
+     * @return Antal exporterade inlägg.
+     */
+    @Transactional(readOnly = true)
+    public long exportAll(Consumer<PostResponseDTO> consumer) {
+        long count = 0;
+        try (Stream<PostResponseDTO> posts = postRepository.streamAll()) {
+            Iterator<PostResponseDTO> iterator = posts.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Begränsar sidstorleken till mellan 1 och MAX_PAGE_SIZE.
+     *
+     * @param limit Sidstorleken klienten bad om, eller null.
+     * @return En giltig sidstorlek.
+     */
+    static int pageSize(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
     }
 
 
@@ -59,56 +207,42 @@ public class PostService {
      */
     @Transactional(readOnly = true)
     public List<PostResponseDTO> findAllByUserId(Long userId) {
-        List<Post> posts = postRepository.findByUserId(userId);
-        List<PostResponseDTO> postResponseDTOList = new ArrayList<>();
-
-        for (Post post : posts) {
-            PostResponseDTO dto = new PostResponseDTO(
-                    post.getId(),
-                    post.getTitle(),
-                    post.getContent(),
-                    post.getUser().getId(),
-                    post.getUser().getAlias(),
-                    post.getCreated()
-            );
-            postResponseDTOList.add(dto);
-        }
-        return postResponseDTOList;
+        return postRepository.findDtosByUserId(userId);
     }
 
     /**
      * Hitta ett specifikt inlägg med ett ID.
+     * Resultatet cachas per ID, cachen töms när inlägget uppdateras eller raderas.
+     * <p>
+     * Inlägget läses alltid från primärdatabasen. En replik som ligger efter skulle annars kunna fylla
+     * cachen med en gammal version direkt efter att den tömts, och den ligger sedan kvar hela cachens livstid.
+     * Cacheträffar når inte databasen alls, så det är bara missarna som belastar primärdatabasen.
      *
      * @param id Inläggets id.
      * @return En PostResponseDTO.
      * @throws RuntimeException on inlägget inte hittas.
      */
+    @Cacheable(cacheNames = CacheConfig.POSTS_CACHE, key = "#id")
     @Transactional(readOnly = true)
     public PostResponseDTO findById(Long id) {
-        Post post = postRepository.findById(id)
+        return ReplicaRoutingDataSource.readFromPrimary(() -> postRepository.findDtoById(id))
                 .orElseThrow(() -> new RuntimeException("Post not found with id: " + id));
-
-        return new PostResponseDTO(
-                post.getId(),
-                post.getTitle(),
-                post.getContent(),
-                post.getUser().getId(),
-                post.getUser().getAlias(),
-                post.getCreated()
-        );
     }
 
     /**
      * Skapa ett nytt inlägg för en användare.
+     * Användaren läses inte från databasen, id och alias kommer från den inloggade användarens token
+     * och inlägget kopplas till en referens (getReferenceById). Enda SQL-satsen är INSERT.
      *
-     * @param userId  Användarens id.
-     * @param postDto Vi hämtar data från klienten via PostRequestDTO.
+     * @param userId    Användarens id.
+     * @param userAlias Användarens alias, används i svaret. Kan vara det gamla aliaset efter ett byte,
+     *                  tills token förnyas (se SecurityConfig.jwtAuthenticationConverter).
+     * @param postDto   Vi hämtar data från klienten via PostRequestDTO.
      * @return En PostResponseDTO med information om postens innehåll.
      */
     @Transactional
-    public PostResponseDTO createPost(Long userId, PostRequestDTO postDto) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found with id: " + userId));
+    public PostResponseDTO createPost(Long userId, String userAlias, PostRequestDTO postDto) {
+        User user = userRepository.getReferenceById(userId);
 
         Post post = new Post();
         post.setTitle(postDto.title());
@@ -116,43 +250,91 @@ public class PostService {
         post.setUser(user);
 
         Post savedPost = postRepository.save(post);
+        PostResponseDTO createdPost = PostMapper.toDTO(savedPost, userAlias);
+
+        // Delivered to live subscribers after commit (see PostFeedService)
+        eventPublisher.publishEvent(new PostCreatedEvent(createdPost));
+
+        return createdPost;
+    }
+
+    /**
+     * Skapa flera inlägg för samma användare i en transaktion.
+     * Användaren läses inte från databasen (se createPost) och inläggen sparas med JDBC-batchning
+     * (hibernate.jdbc.batch_size) istället för en INSERT per anrop.
+     *
+     * @param userId    Användarens id.
+     * @param userAlias Användarens alias, används i svaret. Kan vara det gamla aliaset efter ett byte,
+     *                  tills token förnyas (se SecurityConfig.jwtAuthenticationConverter).
+     * @param posts     Inläggen som ska skapas.
+     * @return Lista av PostResponseDTO i samma ordning som inläggen skickades.
+     */
+    @Transactional
+    public List<PostResponseDTO> createPosts(Long userId, String userAlias, List<PostRequestDTO> posts) {
+        User user = userRepository.getReferenceById(userId);
+
+        List<Post> entities = posts.stream()
+                .map(postDto -> PostMapper.toEntity(postDto, user))
+                .toList();
+
+        List<PostResponseDTO> createdPosts = postRepository.saveAll(entities)
+                .stream()
+                .map(post -> PostMapper.toDTO(post, userAlias))
+                .toList();
 
-        return new PostResponseDTO(
-                savedPost.getId(),
-                savedPost.getTitle(),
-                savedPost.getContent(),
-                savedPost.getUser().getId(),
-                savedPost.getUser().getAlias(),
-                savedPost.getCreated()
-        );
+        createdPosts.forEach(createdPost -> eventPublisher.publishEvent(new PostCreatedEvent(createdPost)));
+
+        return createdPosts;
     }
 
     /**
      * Uppdatera ett inlägg.
      * Söka upp ett inlägg med dess id och få uppdaterade uppgifterna från klienten.
+     * <p>
+     * Om klienten skickar med förväntade ETag-värden (If-Match) måste inläggets nuvarande värde
+     * (PostMapper.versionTag) vara ett av dem, annars har någon annan hunnit ändra inlägget eller
+     * författaren har bytt alias. Hibernate kontrollerar dessutom versionen i själva UPDATE-satsen,
+     * så samtidiga ändringar upptäcks utan att raden låses.
      *
      * @param id             Inläggets ID.
      * @param postRequestDTO Vi hämtar data från klienten via PostRequestDTO.
+     * @param expectedTags   ETag-värden (utan citattecken) som klienten godtar, eller null för att uppdatera
+     *                       oavsett version. En tom mängd godtar inget värde.
      * @return En PostResponseDTO med information om postens innehåll.
+     * @throws OptimisticLockingFailureException om inlägget har ändrats sedan klienten läste det.
      */
     @Transactional
-    public PostResponseDTO updatePost(Long id, PostRequestDTO postRequestDTO) {
+    public PostResponseDTO updatePost(Long id, PostRequestDTO postRequestDTO, Set<String> expectedTags) {
         Post post = postRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Post not found with id: " + id));
 
+        if (expectedTags != null
+                && !expectedTags.contains(PostMapper.versionTag(post.getVersion(), post.getUser().getAlias()))) {
+            throw new OptimisticLockingFailureException("Post has been modified, please reload and try again");
+        }
+
         post.setTitle(postRequestDTO.title());
         post.setContent(postRequestDTO.content());
 
-        Post updatedPost = postRepository.save(post);
+        // Flush so the returned version is the one written to the database
+        Post updatedPost = postRepository.saveAndFlush(post);
+
+        // The cached post is evicted after commit (see evictCachedPost)
+        eventPublisher.publishEvent(new PostChangedEvent(id));
+
+        return PostMapper.toDTO(updatedPost);
+    }
 
-        return new PostResponseDTO(
-                updatedPost.getId(),
-                updatedPost.getTitle(),
-                updatedPost.getContent(),
-                updatedPost.getUser().getId(),
-                updatedPost.getUser().getAlias(),
-                updatedPost.getCreated()
-        );
+    /**
+     * Hämta en sammanfattning (antal, senaste ändring och alias) av en användares inlägg.
+     * Används för att räkna fram ETag för listan utan att hämta inläggen.
+     *
+     * @param userId Användarens id.
+     * @return En PostListStamp.
+     */
+    @Transactional(readOnly = true)
+    public PostListStamp getStampByUserId(Long userId) {
+        return postRepository.findStampByUserId(userId);
     }
 
     /**
@@ -164,8 +346,37 @@ public class PostService {
     public boolean deletePost(Long id) {
         if (postRepository.existsById(id)) {
             postRepository.deleteById(id);
+            eventPublisher.publishEvent(new PostChangedEvent(id));
             return true;
         }
         return false;
     }
+
+    /**
+     * Tömmer cacheposten för ett ändrat eller raderat inlägg när transaktionen har committats.
+     * <p>
+     * Töms cachen redan innan commit kan en samtidig läsning hinna hämta den gamla, fortfarande
+     * committade raden och lägga tillbaka den i cachen, där den sedan ligger kvar hela livstiden.
+     * Utan transaktion (deletePost) töms cachen direkt.
+     *
+     * @param event Händelsen med inläggets id.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @CacheEvict(cacheNames = CacheConfig.POSTS_CACHE, key = "#event.postId()")
+    public void evictCachedPost(PostChangedEvent event) {
+        // Nothing to do here, @CacheEvict removes the entry
+    }
+
+    /**
+     * Tömmer inläggscachen när en användare har bytt alias, eftersom aliaset ingår i varje cachat inlägg.
+     * Cachen är nycklad på inläggets id, så hela cachen töms istället för att leta upp användarens inlägg.
+     * Byte av alias är sällsynt, så det kostar bara några extra läsningar.
+     *
+     * @param event Händelsen med användarens id.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @CacheEvict(cacheNames = CacheConfig.POSTS_CACHE, allEntries = true, condition = "#event.aliasChanged()")
+    public void evictPostsOfRenamedUser(UserChangedEvent event) {
+        // Nothing to do here, @CacheEvict removes the entries
+    }
 }
\ No newline at end of file
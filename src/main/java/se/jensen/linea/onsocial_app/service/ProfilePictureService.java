@@ -0,0 +1,72 @@
+package se.jensen.linea.onsocial_app.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import se.jensen.linea.onsocial_app.DTO.ProfilePictureDTO;
+import se.jensen.linea.onsocial_app.mapper.ProfilePictureMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * ProfilePictureService tar hand om en uppladdad profilbild: bearbetar den med ImageProcessingService
+ * och sparar bilden och miniatyrerna via MediaStorage. Originalet sparas aldrig.
+ * <p>
+ * Filerna namnges enligt ProfilePictureMapper, så att miniatyrernas URL:er kan räknas fram
+ * från bildens URL när användaren senare hämtas.
+ */
+@Service
+public class ProfilePictureService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfilePictureService.class);
+
+    private final ImageProcessingService imageProcessingService;
+    private final MediaStorage mediaStorage;
+
+    public ProfilePictureService(ImageProcessingService imageProcessingService, MediaStorage mediaStorage) {
+        this.imageProcessingService = imageProcessingService;
+        this.mediaStorage = mediaStorage;
+    }
+
+    /**
+     * Bearbetar och sparar en profilbild.
+     *
+     * @param upload Den uppladdade filen. Den som anropar äger filen och tar bort den efteråt.
+     * @return URL till bilden och till miniatyrerna.
+     * @throws IllegalArgumentException om filen inte är en bild som går att läsa.
+     * @throws IOException              om bilden inte kunde bearbetas eller sparas.
+     */
+    public ProfilePictureDTO upload(Path upload) throws IOException {
+        Path directory = Files.createTempDirectory("image-");
+        try {
+            ImageProcessingService.ProcessedImage processed = imageProcessingService.process(upload, directory);
+            String id = UUID.randomUUID().toString().replace("-", "");
+            String extension = processed.extension();
+
+            String url = mediaStorage.store(processed.image(), ProfilePictureMapper.FOLDER, ProfilePictureMapper.imageName(id, extension));
+            Map<Integer, String> variants = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Path> thumbnail : processed.thumbnails().entrySet()) {
+                String name = ProfilePictureMapper.thumbnailName(id, thumbnail.getKey(), extension);
+                variants.put(thumbnail.getKey(), mediaStorage.store(thumbnail.getValue(), ProfilePictureMapper.FOLDER, name));
+            }
+            return new ProfilePictureDTO(url, variants);
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Could not delete temporary images in {}", directory, e);
+        }
+    }
+}
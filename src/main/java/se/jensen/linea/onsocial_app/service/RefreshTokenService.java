@@ -0,0 +1,139 @@
+package se.jensen.linea.onsocial_app.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import se.jensen.linea.onsocial_app.model.RefreshToken;
+import se.jensen.linea.onsocial_app.model.User;
+import se.jensen.linea.onsocial_app.repository.RefreshTokenRepository;
+import se.jensen.linea.onsocial_app.repository.UserRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * RefreshTokenService skapar, roterar och spärrar refresh tokens.
+ * <p>
+ * En refresh token är en slumpad sträng utan innehåll (opaque). Klienten byter den mot en ny
+ * access token via /auth/refresh, så att användaren slipper logga in med lösenord (BCrypt) varje timme.
+ * Varje token kan bara användas en gång och byts då mot en ny. Används en redan använd token igen
+ * har den troligen stulits, därför spärras då alla token från samma inloggning.
+ */
+@Service
+public class RefreshTokenService {
+
+    // 256 bits, the token cannot be guessed
+    private static final int TOKEN_BYTES = 32;
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final UserRepository userRepository;
+    private final Duration ttl;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository,
+                               UserRepository userRepository,
+                               @Value("${auth.refresh-token.ttl:30d}") Duration ttl) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.userRepository = userRepository;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Resultatet av en rotation.
+     *
+     * @param user         Användaren som token tillhör, hämtad i samma fråga som token.
+     * @param refreshToken Den nya refresh token som ersätter den gamla.
+     */
+    public record Rotation(User user, String refreshToken) {
+    }
+
+    /**
+     * Skapar en ny refresh token vid inloggning, i en ny familj.
+     *
+     * @param userId Användarens id.
+     * @return Refresh token i klartext, skickas till klienten och sparas bara som hash.
+     */
+    @Transactional
+    public String issue(Long userId) {
+        return issue(userRepository.getReferenceById(userId), UUID.randomUUID());
+    }
+
+    /**
+     * Byter en refresh token mot en ny i samma familj.
+     * Transaktionen rullas inte tillbaka vid BadCredentialsException, så att spärren
+     * av familjen sparas även när anropet avvisas.
+     *
+     * @param rawToken Refresh token från klienten.
+     * @return Användaren och den nya refresh token.
+     * @throws BadCredentialsException om token är okänd, har gått ut, är spärrad eller redan använd.
+     */
+    @Transactional(noRollbackFor = BadCredentialsException.class)
+    public Rotation rotate(String rawToken) {
+        RefreshToken token = refreshTokenRepository.findWithUserByTokenHash(hash(rawToken))
+                .orElseThrow(() -> new BadCredentialsException("Invalid refresh token"));
+
+        Instant now = Instant.now();
+        if (token.getRevokedAt() != null) {
+            throw new BadCredentialsException("Refresh token has been revoked");
+        }
+        if (!token.getExpiresAt().isAfter(now)) {
+            throw new BadCredentialsException("Refresh token has expired");
+        }
+
+        // The conditional UPDATE decides the winner if the same token is presented twice at once
+        if (refreshTokenRepository.markUsed(token.getId(), now) == 0) {
+            refreshTokenRepository.revokeFamily(token.getFamilyId(), now);
+            throw new BadCredentialsException("Refresh token has already been used, please log in again");
+        }
+
+        return new Rotation(token.getUser(), issue(token.getUser(), token.getFamilyId()));
+    }
+
+    /**
+     * Spärrar en refresh token och alla token från samma inloggning, vid utloggning.
+     * Okända token ignoreras, så att utloggning alltid lyckas.
+     *
+     * @param rawToken Refresh token från klienten.
+     */
+    @Transactional
+    public void revoke(String rawToken) {
+        refreshTokenRepository.findByTokenHash(hash(rawToken))
+                .ifPresent(token -> refreshTokenRepository.revokeFamily(token.getFamilyId(), Instant.now()));
+    }
+
+    /**
+     * Raderar utgångna token en gång i timmen, de kan ändå aldrig användas igen.
+     */
+    @Scheduled(fixedDelayString = "${auth.refresh-token.purge-interval:1h}")
+    @Transactional
+    public void purgeExpired() {
+        refreshTokenRepository.deleteExpired(Instant.now());
+    }
+
+    private String issue(User user, UUID familyId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(bytes);
+        String rawToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        refreshTokenRepository.save(new RefreshToken(hash(rawToken), familyId, user, Instant.now().plus(ttl)));
+        return rawToken;
+    }
+
+    // The token is random with full entropy, a fast unsalted hash is enough (unlike passwords)
+    static String hash(String rawToken) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(rawToken.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -6,9 +6,11 @@ import org.springframework.security.oauth2.jwt.JwtClaimsSet;
 import org.springframework.security.oauth2.jwt.JwtEncoder;
 import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
 import org.springframework.stereotype.Service;
+import se.jensen.linea.onsocial_app.security.CustomUserDetails;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 /**
@@ -21,6 +23,10 @@ import java.util.stream.Collectors;
 @Service
 public class TokenService {
 
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String EMAIL_CLAIM = "email";
+    public static final String ROLE_CLAIM = "role";
+
     private final JwtEncoder jwtEncoder;
 
     public TokenService(JwtEncoder jwtEncoder) {
@@ -32,23 +38,43 @@ public class TokenService {
      * Token innehåller användarens identitet och roller och är giltig i 1 timme.
      * String scope samlar användarens roll/roller vilket sen kan användas om användaren försöker använda en CRUD.
      * Matchar användarens roll med CRUD-metodens säkerhetsregler, då får användaren åtkomst till den metoden.
+     * <p>
+     * Användarens id, email och roll läggs också in som claims, så att SecurityConfig kan bygga
+     * CustomUserDetails direkt från token utan att slå upp användaren i databasen vid varje anrop.
      *
      * @param authentication innehåller användarens identitet och roller.
      * @return En signerad JWT-token.
      */
     public String generateToken(Authentication authentication) {
+        return generateToken((CustomUserDetails) authentication.getPrincipal());
+    }
+
+    /**
+     * Genererar JWT-token direkt från användaruppgifterna, utan en Authentication.
+     * Används av /auth/refresh där användaren inte har loggat in med lösenord.
+     *
+     * Varje token får ett unikt id (jti), så att en enskild token kan spärras vid utloggning.
+     *
+     * @param userDetails Användarens identitet och roller.
+     * @return En signerad JWT-token.
+     */
+    public String generateToken(CustomUserDetails userDetails) {
         Instant now = Instant.now();
 
-        String scope = authentication.getAuthorities().stream()
+        String scope = userDetails.getAuthorities().stream()
                 .map(GrantedAuthority::getAuthority)
                 .collect(Collectors.joining(" "));
 
         JwtClaimsSet claims = JwtClaimsSet.builder()
+                .id(UUID.randomUUID().toString())
                 .issuer("self")
                 .issuedAt(now)
                 .expiresAt(now.plus(1, ChronoUnit.HOURS))
-                .subject(authentication.getName())
+                .subject(userDetails.getUsername())
                 .claim("scope", scope)
+                .claim(USER_ID_CLAIM, userDetails.getId())
+                .claim(EMAIL_CLAIM, userDetails.getEmail())
+                .claim(ROLE_CLAIM, userDetails.getRole())
                 .build();
 
         return jwtEncoder
@@ -0,0 +1,147 @@
+package se.jensen.linea.onsocial_app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import se.jensen.linea.onsocial_app.DTO.ProfilePictureDTO;
+import se.jensen.linea.onsocial_app.DTO.UploadJobDTO;
+import se.jensen.linea.onsocial_app.exception.UploadBusyException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * UploadJobService bearbetar och laddar upp profilbilder i bakgrunden (se ProfilePictureService),
+ * så att anropets tråd inte väntar på bearbetningen eller lagringen.
+ * <p>
+ * Controllern sparar bilden på disk och lämnar över filen hit. Svaret (HTTP 202) går tillbaka direkt
+ * med ett jobb-id, och klienten frågar efter resultatet med getJob. Uppladdningen körs i en egen,
+ * begränsad trådpool: högst workers samtidigt mot lagringen och högst queueCapacity i kö. Är kön full
+ * avvisas uppladdningen direkt med UploadBusyException (HTTP 503 med Retry-After).
+ * <p>
+ * Jobbens status ligger i minnet en begränsad tid (jobTtl) efter senaste ändringen, högst maxJobs jobb.
+ * Statusen finns bara på den instans som tog emot uppladdningen.
+ */
+@Service
+public class UploadJobService implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadJobService.class);
+
+    private final ProfilePictureService profilePictureService;
+    private final ThreadPoolExecutor executor;
+    private final Duration retryAfter;
+    private final Cache<String, UploadJobDTO> jobs;
+    private final Timer uploadTimer;
+    private final Counter rejected;
+
+    public UploadJobService(ProfilePictureService profilePictureService,
+                            @Value("${media.upload.workers:16}") int workers,
+                            @Value("${media.upload.queue-capacity:256}") int queueCapacity,
+                            @Value("${media.upload.retry-after:1s}") Duration retryAfter,
+                            @Value("${media.upload.job-ttl:1h}") Duration jobTtl,
+                            @Value("${media.upload.max-jobs:100000}") long maxJobs,
+                            MeterRegistry meterRegistry) {
+        this.profilePictureService = profilePictureService;
+        this.retryAfter = retryAfter;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), namedThreads(), new ThreadPoolExecutor.AbortPolicy());
+        this.jobs = Caffeine.newBuilder()
+                .maximumSize(maxJobs)
+                .expireAfterWrite(jobTtl)
+                .build();
+
+        Gauge.builder("media.upload.queue", executor, pool -> pool.getQueue().size())
+                .description("Background uploads waiting for a worker")
+                .register(meterRegistry);
+        this.uploadTimer = Timer.builder("media.upload")
+                .description("Time to process and store an uploaded profile picture")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("media.upload.rejected")
+                .description("Background uploads rejected because the queue was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Lägger en uppladdning i kön. Jobbet äger filen och tar bort den när uppladdningen är klar.
+     *
+     * @param file Bilden, sparad på disk.
+     * @return Jobbet med status PENDING.
+     * @throws UploadBusyException om kön är full, filen är då redan borttagen.
+     */
+    public UploadJobDTO submit(Path file) {
+        String id = UUID.randomUUID().toString();
+        UploadJobDTO pending = UploadJobDTO.pending(id);
+        jobs.put(id, pending);
+        try {
+            executor.execute(() -> upload(id, file));
+        } catch (RejectedExecutionException e) {
+            jobs.invalidate(id);
+            deleteQuietly(file);
+            rejected.increment();
+            throw new UploadBusyException(retryAfter);
+        }
+        return pending;
+    }
+
+    /**
+     * Hämtar status för ett jobb.
+     *
+     * @param id Jobbets id.
+     * @return Jobbets status, eller tom om jobbet inte finns eller har gått ut.
+     */
+    public Optional<UploadJobDTO> getJob(String id) {
+        return Optional.ofNullable(jobs.getIfPresent(id));
+    }
+
+    // The spooled file is deleted before the final status is published, a finished job is cleaned up
+    private void upload(String id, Path file) {
+        UploadJobDTO result;
+        try {
+            ProfilePictureDTO picture = uploadTimer.recordCallable(() -> profilePictureService.upload(file));
+            result = UploadJobDTO.done(id, picture);
+        } catch (Exception e) {
+            result = UploadJobDTO.failed(id, "Upload failed: " + e.getMessage());
+        }
+        deleteQuietly(file);
+        jobs.put(id, result);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete temporary upload {}", file, e);
+        }
+    }
+
+    private static ThreadFactory namedThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "media-upload-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,235 @@
+package se.jensen.linea.onsocial_app.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.jensen.linea.onsocial_app.config.ReplicaRoutingDataSource;
+import se.jensen.linea.onsocial_app.repository.UserIdentifiers;
+import se.jensen.linea.onsocial_app.repository.UserRepository;
+import se.jensen.linea.onsocial_app.security.BloomFilter;
+
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * UserAvailabilityService svarar på om ett alias eller en email redan är upptagen.
+ * <p>
+ * Signup-formuläret frågar vid varje tangenttryckning. Därför finns ett Bloom-filter per fält
+ * med alla upptagna värden i minnet. Säger filtret att värdet inte finns är det säkert ledigt och
+ * databasen används inte alls. Bara en möjlig träff kontrolleras mot databasen.
+ * <p>
+ * Filtren byggs vid start genom att strömma users-tabellen och uppdateras när en användare skapas
+ * eller ändras på den här instansen, först efter att transaktionen har committats. De byggs också om regelbundet, så att användare som registrerats
+ * på andra instanser kommer med. Fram till dess kan filtret svara att ett sådant värde är ledigt,
+ * registreringen stoppas ändå av databasens unik-villkor.
+ * <p>
+ * Ett Bloom-filter kan inte ta bort värden, så alias och email som blir lediga när en användare ändras
+ * eller raderas ger falska träffar (som databasen besvarar korrekt) tills filtren byggs om.
+ * <p>
+ * Mätvärden: uppskattad andel falska träffar (auth.availability.false.positive.rate), utfall per
+ * kontroll (auth.availability.checks) och tid för att bygga om filtren (auth.availability.rebuild).
+ */
+@Service
+public class UserAvailabilityService implements ApplicationRunner {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final UserRepository userRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final long minimumCapacity;
+    private final MeterRegistry meterRegistry;
+    private final Timer rebuildTimer;
+
+    private final Counters aliasCounters;
+    private final Counters emailCounters;
+
+    // Null until the first build, every check goes to the database until then
+    private volatile Filters filters;
+    // Filled alongside the current filters while a rebuild streams the table
+    private Filters rebuilding;
+
+    public UserAvailabilityService(UserRepository userRepository,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${users.availability.expected-size:100000}") long minimumCapacity,
+                                   MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.minimumCapacity = minimumCapacity;
+        this.meterRegistry = meterRegistry;
+        this.rebuildTimer = Timer.builder("auth.availability.rebuild")
+                .description("Time to rebuild the alias and email filters from the users table")
+                .register(meterRegistry);
+        this.aliasCounters = new Counters("alias");
+        this.emailCounters = new Counters("email");
+
+        Gauge.builder("auth.availability.false.positive.rate", this, service -> service.falsePositiveRate(true))
+                .tag("field", "alias")
+                .register(meterRegistry);
+        Gauge.builder("auth.availability.false.positive.rate", this, service -> service.falsePositiveRate(false))
+                .tag("field", "email")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Bygger filtren när applikationen startar.
+     *
+     * @param args Startargument (används inte).
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        rebuild();
+    }
+
+    /**
+     * Kontrollerar om ett alias är upptaget.
+     *
+     * @param alias Alias att kontrollera.
+     * @return true om en användare har aliaset.
+     */
+    public boolean isAliasTaken(String alias) {
+        Filters current = filters;
+        return isTaken(alias, current == null ? null : current.aliases(), userRepository::existsByAlias, aliasCounters);
+    }
+
+    /**
+     * Kontrollerar om en email är upptagen.
+     *
+     * @param email Email att kontrollera.
+     * @return true om en användare har emailen.
+     */
+    public boolean isEmailTaken(String email) {
+        Filters current = filters;
+        return isTaken(email, current == null ? null : current.emails(), userRepository::existsByEmail, emailCounters);
+    }
+
+    /**
+     * Registrerar alias och email för en ny eller ändrad användare.
+     *
+     * @param alias Användarens alias.
+     * @param email Användarens email.
+     */
+    public synchronized void taken(String alias, String email) {
+        if (filters != null) {
+            filters.put(alias, email);
+        }
+        if (rebuilding != null) {
+            rebuilding.put(alias, email);
+        }
+    }
+
+    /**
+     * Registrerar en sparad användare när transaktionen har committats, så att en registrering
+     * som rullas tillbaka inte lämnar alias och email som falska träffar i filtren.
+     *
+     * @param event Den sparade användaren.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserSaved(UserSavedEvent event) {
+        taken(event.suggestion().alias(), event.email());
+    }
+
+    /**
+     * Bygger nya filter från users-tabellen och ersätter de gamla.
+     * Användare som skapas under tiden läggs till i både de gamla och de nya filtren.
+     * Tabellen läses från primärdatabasen. Ett filter som saknar en användare skulle svara att
+     * aliaset är ledigt, och det får filtret aldrig göra.
+     */
+    @Scheduled(fixedDelayString = "${users.availability.rebuild-interval:10m}",
+            initialDelayString = "${users.availability.rebuild-interval:10m}")
+    public void rebuild() {
+        rebuildTimer.record(() -> {
+            long expected = Math.max(minimumCapacity, userRepository.count() * 2);
+            Filters next = new Filters(
+                    BloomFilter.create(expected, FALSE_POSITIVE_RATE),
+                    BloomFilter.create(expected, FALSE_POSITIVE_RATE));
+            synchronized (this) {
+                rebuilding = next;
+            }
+            try {
+                // A lagging replica would drop recent users, and the filter would then call them free
+                ReplicaRoutingDataSource.readFromPrimary(() -> readOnlyTransaction.executeWithoutResult(status -> {
+                    try (Stream<UserIdentifiers> users = userRepository.streamIdentifiers()) {
+                        users.forEach(user -> next.put(user.alias(), user.email()));
+                    }
+                }));
+                synchronized (this) {
+                    filters = next;
+                }
+            } finally {
+                synchronized (this) {
+                    rebuilding = null;
+                }
+            }
+        });
+    }
+
+    private boolean isTaken(String value, BloomFilter filter, Predicate<String> existsInDatabase, Counters counters) {
+        if (value == null) {
+            return false;
+        }
+        if (filter != null && !filter.mightContain(value)) {
+            counters.notPresent.increment();
+            return false;
+        }
+        boolean taken = existsInDatabase.test(value);
+        if (filter != null) {
+            (taken ? counters.taken : counters.falsePositive).increment();
+        }
+        return taken;
+    }
+
+    private double falsePositiveRate(boolean alias) {
+        Filters current = filters;
+        if (current == null) {
+            return Double.NaN;
+        }
+        return (alias ? current.aliases() : current.emails()).expectedFalsePositiveRate();
+    }
+
+    private record Filters(BloomFilter aliases, BloomFilter emails) {
+
+        void put(String alias, String email) {
+            if (alias != null) {
+                aliases.put(alias);
+            }
+            if (email != null) {
+                emails.put(email);
+            }
+        }
+    }
+
+    /**
+     * Utfall per kontroll: säkert ledigt utan databas, upptaget, eller falsk träff i filtret.
+     */
+    private final class Counters {
+
+        private final Counter notPresent;
+        private final Counter taken;
+        private final Counter falsePositive;
+
+        Counters(String field) {
+            this.notPresent = counter(field, "not_present");
+            this.taken = counter(field, "taken");
+            this.falsePositive = counter(field, "false_positive");
+        }
+
+        private Counter counter(String field, String result) {
+            return Counter.builder("auth.availability.checks")
+                    .description("Alias and email availability checks by outcome")
+                    .tag("field", field)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+    }
+}
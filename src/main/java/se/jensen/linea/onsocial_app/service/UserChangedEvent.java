@@ -0,0 +1,11 @@
+package se.jensen.linea.onsocial_app.service;
+
+/**
+ * Händelse som publiceras när en användare har uppdaterats.
+ * UserService tömmer användarcachen och PostService inläggscachen först när transaktionen har committats.
+ *
+ * @param userId       Användarens id.
+ * @param aliasChanged true om användaren har bytt alias, som ingår i användarens cachade inlägg.
+ */
+public record UserChangedEvent(Long userId, boolean aliasChanged) {
+}
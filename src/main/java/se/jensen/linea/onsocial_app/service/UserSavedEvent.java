@@ -0,0 +1,14 @@
+package se.jensen.linea.onsocial_app.service;
+
+import se.jensen.linea.onsocial_app.DTO.AliasSuggestionDTO;
+
+/**
+ * Händelse som publiceras när en användare har skapats eller uppdaterats.
+ * Aliasindexet (AliasAutocompleteService) och filtren i UserAvailabilityService uppdateras först
+ * när transaktionen har committats, så att en ändring som rullas tillbaka inte lämnar spår i dem.
+ *
+ * @param suggestion Användarens id, alias och profilbild.
+ * @param email      Användarens email.
+ */
+public record UserSavedEvent(AliasSuggestionDTO suggestion, String email) {
+}
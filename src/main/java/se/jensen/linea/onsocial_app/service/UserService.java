@@ -1,17 +1,27 @@
 package se.jensen.linea.onsocial_app.service;
 
-import jakarta.transaction.Transactional;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.jensen.linea.onsocial_app.DTO.AliasSuggestionDTO;
+import se.jensen.linea.onsocial_app.DTO.CursorPageDTO;
 import se.jensen.linea.onsocial_app.DTO.UserRequestDTO;
 import se.jensen.linea.onsocial_app.DTO.UserResponseDTO;
+import se.jensen.linea.onsocial_app.config.CacheConfig;
+import se.jensen.linea.onsocial_app.mapper.CursorMapper;
 import se.jensen.linea.onsocial_app.mapper.UserMapper;
 import se.jensen.linea.onsocial_app.model.User;
+import se.jensen.linea.onsocial_app.repository.PostRepository;
 import se.jensen.linea.onsocial_app.repository.UserRepository;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 
 /**
  * UserService innehåller alla metoder vi behöver anropa i UserController.
@@ -27,34 +37,59 @@ import java.util.Optional;
 @Service
 public class UserService {
 
+    /**
+     * Antal användare per sida i katalogen om klienten inte anger något.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * Max antal användare per sida i katalogen, håller minnet per request begränsat.
+     */
+    public static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * Antal inlägg som raderas per transaktion när en användare tas bort.
+     */
+    static final int DELETE_CHUNK_SIZE = 10_000;
+
     private final UserRepository userRepository;
+    private final PostRepository postRepository;
     private final PasswordEncoder passwordEncoder;
     private final UserMapper userMapper;
-
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, UserMapper userMapper) {
+    private final AliasAutocompleteService aliasAutocompleteService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    public UserService(UserRepository userRepository,
+                       PostRepository postRepository,
+                       PasswordEncoder passwordEncoder,
+                       UserMapper userMapper,
+                       AliasAutocompleteService aliasAutocompleteService,
+                       ApplicationEventPublisher eventPublisher,
+                       PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
+        this.postRepository = postRepository;
         this.passwordEncoder = passwordEncoder;
         this.userMapper = userMapper;
+        this.aliasAutocompleteService = aliasAutocompleteService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
      * Skapa en ny användare.
+     * Användaren sparas direkt med en INSERT, utan att först fråga om alias eller email är upptagna.
+     * Databasens unik-villkor avgör, även när två registreringar med samma alias sker samtidigt.
+     * En dubblett ger DataIntegrityViolationException som GlobalExceptionHandler gör om till
+     * "Alias already exists" eller "E-mail already exists".
+     * Aliasindexet och tillgänglighetsfiltren uppdateras först när transaktionen har committats (se UserSavedEvent).
      *
      * @param userRequestDTO Vi hämtar data från klienten via UserRequestDTO.
      * @return En UserResponsDTO med information om användaren.
+     * @throws org.springframework.dao.DataIntegrityViolationException om alias eller email redan finns.
      */
     @Transactional
     public UserResponseDTO createUser(UserRequestDTO userRequestDTO) {
-        // Check if alias already exists (boolean)
-        if (userRepository.findByAlias(userRequestDTO.alias()).isPresent()) {
-            throw new RuntimeException("Alias already exists");
-        }
-
-        // Check if email already exists (boolean)
-        if (userRepository.findByEmail(userRequestDTO.email()).isPresent()) {
-            throw new RuntimeException("E-mail already exists");
-        }
-
         User user = new User();
         user.setAlias(userRequestDTO.alias());
         user.setEmail(userRequestDTO.email());
@@ -64,33 +99,40 @@ public class UserService {
         user.setProfilePicture(userRequestDTO.profilePicture());
 
         User savedUser = userRepository.save(user);
+        // The availability filters and the alias index are updated after commit
+        eventPublisher.publishEvent(new UserSavedEvent(
+                new AliasSuggestionDTO(savedUser.getId(), savedUser.getAlias(), savedUser.getProfilePicture()),
+                savedUser.getEmail()));
 
         return userMapper.userToDTO(savedUser);
     }
 
     /**
-     * Hämta alla användare.
+     * Hämta en sida av användarkatalogen, sorterad på alias.
+     * Bara kolumnerna i UserResponseDTO hämtas och sidan är högst MAX_PAGE_SIZE rader,
+     * så minnet per anrop är begränsat oavsett hur många användare som finns.
      *
-     * @return Lista av UserResponseDTO.
+     * @param aliasPrefix Visa bara användare vars alias börjar med detta, eller null för alla.
+     * @param limit       Antal användare per sida (standard 20, max 100).
+     * @param next        Cursor från föregående sida, eller null för första sidan.
+     * @return En sida av UserResponseDTO och cursor till nästa sida.
+     * @throws IllegalArgumentException om cursorn inte är giltig.
      */
-    public List<UserResponseDTO> getAllUsers() {
-        List<User> users = userRepository.findAll();
-        List<UserResponseDTO> userDTOs = new ArrayList<>();
-
-        for (User user : users) {
-            UserResponseDTO dto = new UserResponseDTO(
-                    user.getId(),
-                    user.getAlias(),
-                    user.getEmail(),
-                    user.getFirstName(),
-                    user.getLastName(),
-                    user.getProfilePicture(),
-                    user.getRole()
-            );
-            userDTOs.add(dto);
-        }
+    @Transactional(readOnly = true)
+    public CursorPageDTO<UserResponseDTO> findUsers(String aliasPrefix, Integer limit, String next) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        String prefix = aliasPrefix == null ? "" : aliasPrefix;
+        String after = next == null || next.isBlank() ? "" : CursorMapper.decodeAlias(next);
+
+        // Fetch one extra row to know if there is a next page
+        List<UserResponseDTO> users = userRepository.findDirectory(
+                prefix, likePrefix(prefix), after, Limit.of(pageSize + 1));
 
-        return userDTOs;
+        boolean hasMore = users.size() > pageSize;
+        List<UserResponseDTO> page = hasMore ? users.subList(0, pageSize) : users;
+
+        String nextCursor = hasMore ? CursorMapper.encodeAlias(page.get(page.size() - 1).alias()) : null;
+        return new CursorPageDTO<>(page.stream().map(userMapper::withProfilePictureVariants).toList(), nextCursor);
     }
 
     /**
@@ -109,27 +151,22 @@ public class UserService {
 
     /**
      * Uppdatera en befintlig användare.
+     * Alias, email eller lösenord kan ha ändrats, därför töms användarcachen som används vid inloggning
+     * när transaktionen har committats (se evictCachedUsers). Vid byte av alias töms även inläggscachen
+     * (se PostService.evictPostsOfRenamedUser).
+     * Precis som vid registrering avgör databasens unik-villkor om alias eller email är upptagna.
+     * Ändringen skrivs direkt (flush), så att en dubblett upptäcks i metoden och inte först vid commit.
      *
      * @param id             Användarens unika ID.
      * @param userRequestDTO Vi hämtar den nya informationen från klienten via UserRequestDTO.
      * @return En UserResponseDTO med de uppdaterade uppgifterna.
+     * @throws org.springframework.dao.DataIntegrityViolationException om alias eller email redan finns.
      */
     @Transactional
     public UserResponseDTO updateUser(Long id, UserRequestDTO userRequestDTO) {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("User not found with id: " + id));
-
-        // Check if new alias is already taken by another user (boolean)
-        Optional<User> existingUserWithAlias = userRepository.findByAlias(userRequestDTO.alias());
-        if (existingUserWithAlias.isPresent() && !existingUserWithAlias.get().getId().equals(id)) {
-            throw new RuntimeException("Alias already exists");
-        }
-
-        // Check if new email is already taken by another user (boolean)
-        Optional<User> existingUserWithEmail = userRepository.findByEmail(userRequestDTO.email());
-        if (existingUserWithEmail.isPresent() && !existingUserWithEmail.get().getId().equals(id)) {
-            throw new RuntimeException("E-mail already exists");
-        }
+        boolean aliasChanged = !user.getAlias().equals(userRequestDTO.alias());
 
         user.setAlias(userRequestDTO.alias());
         user.setEmail(userRequestDTO.email());
@@ -143,23 +180,76 @@ public class UserService {
 
         user.setProfilePicture(userRequestDTO.profilePicture());
 
-        User updatedUser = userRepository.save(user);
+        User updatedUser = userRepository.saveAndFlush(user);
+        eventPublisher.publishEvent(new UserSavedEvent(
+                new AliasSuggestionDTO(updatedUser.getId(), updatedUser.getAlias(), updatedUser.getProfilePicture()),
+                updatedUser.getEmail()));
+        eventPublisher.publishEvent(new UserChangedEvent(updatedUser.getId(), aliasChanged));
 
         return userMapper.userToDTO(updatedUser);
     }
 
+    /**
+     * Tömmer användarcachen när transaktionen som ändrade en användare har committats.
+     * <p>
+     * Töms cachen redan innan commit kan en inloggning hinna läsa den gamla raden och lägga tillbaka den,
+     * och då fungerar det gamla lösenordet tills cacheposten går ut (cache.users.ttl).
+     *
+     * @param event Händelsen med användarens id.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @CacheEvict(cacheNames = CacheConfig.USERS_CACHE, allEntries = true)
+    public void evictCachedUsers(UserChangedEvent event) {
+        // Nothing to do here, @CacheEvict removes the entries
+    }
+
     /**
      * Radera en användare.
+     * Användarens inlägg raderas först med DELETE-satser i omgångar om DELETE_CHUNK_SIZE,
+     * varje omgång i en egen kort transaktion. Inläggen laddas aldrig in i minnet,
+     * så även användare med väldigt många inlägg kan raderas.
+     * <p>
+     * Sista omgången och själva användaren raderas i samma transaktion, efter att användarens rad har låsts.
+     * Ett inlägg som skapas samtidigt (med en token som fortfarande gäller) väntar då på låset och misslyckas
+     * när användaren är borta, istället för att användarens DELETE stoppas av främmande nyckeln efter att
+     * alla andra inlägg redan är raderade. Inlägg som hann committas innan låset raderas med sista omgången.
+     * <p>
+     * Användarens inlägg raderas också, därför töms hela inläggscachen, liksom användarcachen.
+     * Aliaset tas bort ur aliasindexet. Filtren i UserAvailabilityService kan inte glömma värden,
+     * de lediga alias och email försvinner ur dem vid nästa schemalagda ombyggnad.
      *
      * @param id Användarens unika ID.
-     * @return en boolean.
+     * @return true om användaren fanns och raderades, annars false.
      */
     // Delete user
+    @CacheEvict(cacheNames = {CacheConfig.POSTS_CACHE, CacheConfig.USERS_CACHE}, allEntries = true)
     public boolean deleteUser(Long id) {
-        if (userRepository.existsById(id)) {
-            userRepository.deleteById(id);
-            return true;
+        Long boundary;
+        while ((boundary = postRepository.findDeleteBoundary(id, DELETE_CHUNK_SIZE - 1)) != null) {
+            postRepository.deleteByUserIdUpTo(id, boundary);
         }
-        return false;
+        // Fewer than one full chunk left, deleted together with the user while its row is locked
+        boolean deleted = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (userRepository.lockById(id) == null) {
+                return false;
+            }
+            postRepository.deleteByUserIdUpTo(id, Long.MAX_VALUE);
+            return userRepository.deleteUserById(id) > 0;
+        }));
+        if (deleted) {
+            aliasAutocompleteService.remove(id);
+        }
+        return deleted;
+    }
+
+    /**
+     * Gör ett LIKE-mönster som matchar allt som börjar med prefixet.
+     * Tecken som betyder något i LIKE (%, _ och escape-tecknet !) matchas bokstavligt.
+     *
+     * @param prefix Prefixet som användaren skrev.
+     * @return Mönstret, t.ex. "li!_%" för "li_".
+     */
+    static String likePrefix(String prefix) {
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
     }
-}
\ No newline at end of file
+}
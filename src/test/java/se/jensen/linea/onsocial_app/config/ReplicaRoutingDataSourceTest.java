@@ -0,0 +1,130 @@
+package se.jensen.linea.onsocial_app.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Testar att läsningar går till repliken och skrivningar till primärdatabasen.
+ * Två H2-databaser i minnet används som primärdatabas och replik.
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private ReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate writeTransaction;
+    private TransactionTemplate readOnlyTransaction;
+
+    private void setUp(String replicaUrl) {
+        HikariDataSource primary = dataSource("jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1");
+        HikariDataSource replica = dataSource(replicaUrl);
+        replica.setInitializationFailTimeout(-1);
+        replica.setConnectionTimeout(250);
+
+        new JdbcTemplate(primary).execute("CREATE TABLE IF NOT EXISTS marker (name VARCHAR(20))");
+        new JdbcTemplate(primary).execute("MERGE INTO marker KEY (name) VALUES ('primary')");
+        if (replicaUrl.startsWith("jdbc:h2:mem:")) {
+            new JdbcTemplate(replica).execute("CREATE TABLE IF NOT EXISTS marker (name VARCHAR(20))");
+            new JdbcTemplate(replica).execute("MERGE INTO marker KEY (name) VALUES ('replica')");
+        }
+
+        ReadYourWritesTracker tracker = new ReadYourWritesTracker(Duration.ofSeconds(5));
+        routingDataSource = new ReplicaRoutingDataSource(primary, List.of(replica), tracker, Duration.ofSeconds(30));
+
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+        dataSource.setReadOnlyDataSource(routingDataSource);
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        transactionManager.addListener(tracker);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        writeTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+        routingDataSource.close();
+    }
+
+    @Test
+    public void testReadOnlyTransactionsUseReplica() {
+        setUp("jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1");
+
+        assertEquals("replica", readOnlyTransaction.execute(status -> marker()));
+        assertEquals("primary", writeTransaction.execute(status -> marker()));
+    }
+
+    @Test
+    public void testReadsAfterWriteStickToPrimary() {
+        setUp("jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1");
+        login("alice");
+
+        writeTransaction.executeWithoutResult(status ->
+                jdbcTemplate.update("UPDATE marker SET name = 'primary'"));
+
+        assertEquals("primary", readOnlyTransaction.execute(status -> marker()));
+
+        // Other users still read from the replica
+        login("bob");
+        assertEquals("replica", readOnlyTransaction.execute(status -> marker()));
+    }
+
+    @Test
+    public void testFallsBackToPrimaryWhenReplicaIsDown() {
+        setUp("jdbc:h2:file:./target/missing-replica/db;IFEXISTS=TRUE");
+
+        assertEquals("primary", readOnlyTransaction.execute(status -> marker()));
+        assertEquals("primary", readOnlyTransaction.execute(status -> marker()));
+    }
+
+    @Test
+    public void testReadFromPrimaryBypassesReplica() {
+        setUp("jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1");
+
+        assertEquals("primary", ReplicaRoutingDataSource.readFromPrimary(
+                () -> readOnlyTransaction.execute(status -> marker())));
+        // Only reads inside readFromPrimary are affected
+        assertEquals("replica", readOnlyTransaction.execute(status -> marker()));
+    }
+
+    @Test
+    public void testExplicitCredentialsAreNotSupported() {
+        setUp("jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1");
+
+        assertThrows(SQLFeatureNotSupportedException.class,
+                () -> routingDataSource.getConnection("sa", ""));
+    }
+
+    private String marker() {
+        return jdbcTemplate.queryForObject("SELECT name FROM marker", String.class);
+    }
+
+    private static void login(String alias) {
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(alias, null, List.of()));
+    }
+
+    private static HikariDataSource dataSource(String url) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        return dataSource;
+    }
+}
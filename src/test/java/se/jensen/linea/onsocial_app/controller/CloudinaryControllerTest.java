@@ -0,0 +1,299 @@
+package se.jensen.linea.onsocial_app.controller;
+
+import com.cloudinary.Cloudinary;
+import com.cloudinary.utils.ObjectUtils;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.multipart.MultipartFile;
+import se.jensen.linea.onsocial_app.DTO.ProfilePictureDTO;
+import se.jensen.linea.onsocial_app.DTO.UploadJobDTO;
+import se.jensen.linea.onsocial_app.service.CloudinaryMediaStorage;
+import se.jensen.linea.onsocial_app.service.ImageProcessingService;
+import se.jensen.linea.onsocial_app.service.ProfilePictureService;
+import se.jensen.linea.onsocial_app.service.UploadJobService;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Kontrollerar att bilduppladdningen strömmar filen till lagringen istället för att läsa in den i minnet.
+ * <p>
+ * 100 samtidiga uppladdningar på 10 MB skickas till en lokal server som låtsas vara Cloudinary.
+ * Med file.getBytes() skulle det kräva minst 1 GB heap, nu ska heapen i stort sett inte växa.
+ * I det testet skickas filen vidare utan bildbearbetning, så att det är överföringen som mäts.
+ */
+public class CloudinaryControllerTest {
+
+    private static final int UPLOADS = 100;
+    private static final int FILE_SIZE = 10 * 1024 * 1024;
+    private static final long MB = 1024 * 1024;
+    private static final String STORED_URL = "https://media.example.com/profile_pictures/image.jpg";
+    private static final ProfilePictureDTO STORED = new ProfilePictureDTO(STORED_URL, Map.of(64, STORED_URL, 256, STORED_URL));
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer storageServer;
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private CloudinaryMediaStorage storage;
+    private ImageProcessingService imageProcessingService;
+    private UploadJobService uploadJobService;
+    private CloudinaryController controller;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        // Stand-in for the Cloudinary upload API, drains the request body with a small buffer
+        storageServer = HttpServer.create(new InetSocketAddress("localhost", 0), UPLOADS);
+        storageServer.setExecutor(Executors.newFixedThreadPool(16));
+        storageServer.createContext("/", exchange -> {
+            byte[] buffer = new byte[8192];
+            try (InputStream body = exchange.getRequestBody()) {
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    receivedBytes.addAndGet(read);
+                }
+            }
+            byte[] response = ("{\"secure_url\":\"" + STORED_URL + "\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        storageServer.start();
+
+        storage = new CloudinaryMediaStorage(new Cloudinary(ObjectUtils.asMap(
+                "cloud_name", "test",
+                "api_key", "key",
+                "api_secret", "secret",
+                "upload_prefix", "http://localhost:" + storageServer.getAddress().getPort())));
+        imageProcessingService = new ImageProcessingService(1280, 50_000_000, 0.85f, 2, new SimpleMeterRegistry());
+        controller = controller(imageProcessingService);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        uploadJobService.close();
+        imageProcessingService.close();
+        storageServer.stop(0);
+        ((ExecutorService) storageServer.getExecutor()).shutdownNow();
+    }
+
+    @Test
+    public void testUploadReturnsUrlAndRemovesTemporaryFile() throws IOException {
+        Path image = writePhoto();
+        long spooledBefore = spooledUploads();
+
+        ResponseEntity<?> response = controller.uploadImage(new DiskMultipartFile(image));
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(Map.of("url", STORED.url(), "variants", STORED.variants()), response.getBody());
+        assertTrue(receivedBytes.get() > 0);
+        assertEquals(spooledBefore, spooledUploads());
+    }
+
+    @Test
+    public void testUploadOfFileThatIsNotAnImageIsRejected() throws IOException {
+        Path notAnImage = writeImage(64 * 1024);
+
+        ResponseEntity<?> response = controller.uploadImage(new DiskMultipartFile(notAnImage));
+
+        assertEquals(400, response.getStatusCode().value());
+        assertEquals(0, receivedBytes.get());
+    }
+
+    @Test
+    public void testAsyncUploadReturnsJobAndFinishesInBackground() throws Exception {
+        Path image = writePhoto();
+
+        ResponseEntity<?> response = controller.uploadPublicImage(new DiskMultipartFile(image), true);
+
+        assertEquals(202, response.getStatusCode().value());
+        UploadJobDTO job = (UploadJobDTO) response.getBody();
+        assertEquals(UploadJobDTO.Status.PENDING, job.status());
+        assertEquals("/upload/jobs/" + job.id(), response.getHeaders().getLocation().toString());
+
+        UploadJobDTO finished = job;
+        for (int i = 0; i < 500 && finished.status() == UploadJobDTO.Status.PENDING; i++) {
+            Thread.sleep(10);
+            finished = controller.getUploadJob(job.id()).getBody();
+        }
+        assertEquals(UploadJobDTO.done(job.id(), STORED), finished);
+        assertEquals(404, controller.getUploadJob("unknown").getStatusCode().value());
+    }
+
+    @Test
+    public void testConcurrentLargeUploadsKeepHeapFlat() throws Exception {
+        Path image = writeImage(FILE_SIZE);
+        // Hands the spooled file on unchanged, so each upload streams the full 10 MB to storage
+        ImageProcessingService passthrough = mock(ImageProcessingService.class);
+        when(passthrough.process(any(), any())).thenAnswer(invocation -> new ImageProcessingService.ProcessedImage(
+                "jpg", invocation.getArgument(0), Map.of()));
+        CloudinaryController streaming = controller(passthrough);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long baseline = memory.getHeapMemoryUsage().getUsed();
+
+        AtomicLong peak = new AtomicLong(baseline);
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(UPLOADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<ResponseEntity<?>>> results = new ArrayList<>();
+            for (int i = 0; i < UPLOADS; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return streaming.uploadImage(new DiskMultipartFile(image));
+                }));
+            }
+            start.countDown();
+            for (Future<ResponseEntity<?>> result : results) {
+                assertEquals(200, result.get(5, TimeUnit.MINUTES).getStatusCode().value());
+            }
+        } finally {
+            executor.shutdownNow();
+            sampler.interrupt();
+            sampler.join();
+        }
+
+        long growth = peak.get() - baseline;
+        System.out.printf("%d concurrent uploads of %d MB: peak heap growth %d MB%n", UPLOADS, FILE_SIZE / MB, growth / MB);
+        assertTrue(receivedBytes.get() >= (long) UPLOADS * FILE_SIZE);
+        // Buffering the files would need UPLOADS * FILE_SIZE = 1000 MB
+        assertTrue(growth < 20 * FILE_SIZE, "Peak heap grew by " + growth / MB + " MB");
+    }
+
+    private CloudinaryController controller(ImageProcessingService processing) {
+        if (uploadJobService != null) {
+            uploadJobService.close();
+        }
+        ProfilePictureService profilePictureService = new ProfilePictureService(processing, storage);
+        uploadJobService = new UploadJobService(profilePictureService, 4, 16, Duration.ofSeconds(1), Duration.ofMinutes(5),
+                1000, new SimpleMeterRegistry());
+        return new CloudinaryController(profilePictureService, uploadJobService);
+    }
+
+    private static long spooledUploads() throws IOException {
+        try (var files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(path -> path.getFileName().toString().startsWith("upload-")).count();
+        }
+    }
+
+    private Path writePhoto() throws IOException {
+        BufferedImage photo = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 600; y++) {
+            for (int x = 0; x < 800; x++) {
+                photo.setRGB(x, y, (x * 255 / 800) << 16 | (y * 255 / 600) << 8);
+            }
+        }
+        Path image = tempDir.resolve("photo.jpg");
+        ImageIO.write(photo, "jpg", image.toFile());
+        return image;
+    }
+
+    private Path writeImage(int size) throws IOException {
+        byte[] block = new byte[64 * 1024];
+        new Random(42).nextBytes(block);
+        Path image = tempDir.resolve("image-" + size + ".png");
+        try (OutputStream out = Files.newOutputStream(image)) {
+            for (int written = 0; written < size; written += block.length) {
+                out.write(block, 0, Math.min(block.length, size - written));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Multipart-fil som ligger på disk, som en del som Tomcat har sparat över tröskelvärdet.
+     */
+    private record DiskMultipartFile(Path path) implements MultipartFile {
+
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return path.getFileName().toString();
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/png";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return getSize() == 0;
+        }
+
+        @Override
+        public long getSize() {
+            try {
+                return Files.size(path);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public byte[] getBytes() {
+            throw new AssertionError("The upload must not read the whole file into memory");
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return Files.newInputStream(path);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            Files.copy(path, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package se.jensen.linea.onsocial_app.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import se.jensen.linea.onsocial_app.service.LocalMediaStorage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Kontrollerar lokal lagring av bilder: sparade filer serveras hela eller i delar (Range),
+ * med cache-headers, och namn utanför lagringskatalogen går inte att nå.
+ */
+public class MediaControllerTest {
+
+    private static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    @TempDir
+    Path tempDir;
+
+    private LocalMediaStorage storage;
+    private MockMvc mockMvc;
+    private String path;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        storage = new LocalMediaStorage(tempDir.resolve("media").toString(), "http://media.example.com/");
+        mockMvc = MockMvcBuilders.standaloneSetup(new MediaController(storage)).build();
+
+        Path upload = Files.writeString(tempDir.resolve("upload.tmp"), CONTENT, StandardCharsets.UTF_8);
+        String url = storage.store(upload, "profile_pictures", "3f2a9c1e0b7d4e6f8a5b2c1d0e9f8a7b.png");
+        assertEquals("http://media.example.com/media/profile_pictures/3f2a9c1e0b7d4e6f8a5b2c1d0e9f8a7b.png", url);
+        path = url.substring("http://media.example.com".length());
+    }
+
+    @Test
+    public void testServesWholeFileWithCacheHeaders() throws Exception {
+        mockMvc.perform(get(path))
+                .andExpect(status().isOk())
+                .andExpect(content().string(CONTENT))
+                .andExpect(content().contentType("image/png"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length()))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"));
+    }
+
+    @Test
+    public void testServesRange() throws Exception {
+        mockMvc.perform(get(path).header(HttpHeaders.RANGE, "bytes=10-15"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("abcdef"))
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-15/36"));
+
+        mockMvc.perform(get(path).header(HttpHeaders.RANGE, "bytes=-4"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("wxyz"));
+
+        mockMvc.perform(get(path).header(HttpHeaders.RANGE, "bytes=100-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */36"));
+    }
+
+    @Test
+    public void testNotModifiedWhenEtagMatches() throws Exception {
+        String etag = mockMvc.perform(get(path)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    public void testUnknownOrEscapingNamesAreNotFound() throws Exception {
+        Files.writeString(tempDir.resolve("secret.txt"), "secret");
+
+        mockMvc.perform(get("/media/profile_pictures/missing.png")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/media/profile_pictures/..secret.txt")).andExpect(status().isNotFound());
+        assertTrue(storage.find("..", "secret.txt").isEmpty());
+        assertThrows(IllegalArgumentException.class,
+                () -> storage.store(tempDir.resolve("secret.txt"), "../outside", "x.png"));
+        assertThrows(IllegalArgumentException.class,
+                () -> storage.store(tempDir.resolve("secret.txt"), "profile_pictures", "../x.png"));
+    }
+}
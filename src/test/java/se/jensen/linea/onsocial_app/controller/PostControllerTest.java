@@ -0,0 +1,131 @@
+package se.jensen.linea.onsocial_app.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import se.jensen.linea.onsocial_app.DTO.PostResponseDTO;
+import se.jensen.linea.onsocial_app.exception.GlobalExceptionHandler;
+import se.jensen.linea.onsocial_app.mapper.PostMapper;
+import se.jensen.linea.onsocial_app.repository.PostListStamp;
+import se.jensen.linea.onsocial_app.service.PostFeedService;
+import se.jensen.linea.onsocial_app.service.PostService;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Kontrollerar inläggens ETags och hur If-Match tolkas vid uppdatering av ett inlägg.
+ * Inlägget har version 3 och författaren heter "linea", PostService svarar 412 om inläggets
+ * ETag-värde inte finns bland de godtagna.
+ */
+public class PostControllerTest {
+
+    private static final long CURRENT_VERSION = 3;
+    private static final String CURRENT = "\"" + PostMapper.versionTag(CURRENT_VERSION, "linea") + "\"";
+    private static final String OLDER = "\"" + PostMapper.versionTag(CURRENT_VERSION - 1, "linea") + "\"";
+
+    private PostService postService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    public void setUp() {
+        postService = mock(PostService.class);
+        when(postService.updatePost(eq(1L), any(), any())).thenAnswer(invocation -> {
+            Set<String> expectedTags = invocation.getArgument(2);
+            if (expectedTags != null && !expectedTags.contains(PostMapper.versionTag(CURRENT_VERSION, "linea"))) {
+                throw new OptimisticLockingFailureException("Post has been modified");
+            }
+            return post("linea", CURRENT_VERSION + 1);
+        });
+
+        PostController controller = new PostController(postService, mock(PostFeedService.class), JsonMapper.builder().build());
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @Test
+    public void testStrongETagMatches() throws Exception {
+        update(CURRENT)
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + PostMapper.versionTag(CURRENT_VERSION + 1, "linea") + "\""));
+    }
+
+    @Test
+    public void testOtherVersionFails() throws Exception {
+        update(OLDER).andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void testWeakETagNeverMatches() throws Exception {
+        update("W/" + CURRENT).andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void testAnyETagInListMatches() throws Exception {
+        update(OLDER + ", W/\"5-0\", " + CURRENT).andExpect(status().isOk());
+        update(OLDER + ", \"1-0\"").andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void testWildcardAndMissingHeaderSkipVersionCheck() throws Exception {
+        update("*").andExpect(status().isOk());
+        update(null).andExpect(status().isOk());
+    }
+
+    @Test
+    public void testPostETagChangesWhenAuthorIsRenamed() throws Exception {
+        when(postService.findById(1L)).thenReturn(post("linea", CURRENT_VERSION));
+        mockMvc.perform(get("/posts/specific/1").header(HttpHeaders.IF_NONE_MATCH, CURRENT))
+                .andExpect(status().isNotModified());
+
+        when(postService.findById(1L)).thenReturn(post("linea2", CURRENT_VERSION));
+        mockMvc.perform(get("/posts/specific/1").header(HttpHeaders.IF_NONE_MATCH, CURRENT))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testListETagChangesWhenAuthorIsRenamed() throws Exception {
+        when(postService.getStampByUserId(7L)).thenReturn(new PostListStamp(1, Instant.EPOCH, "linea"));
+        when(postService.findAllByUserId(7L)).thenReturn(List.of(post("linea", CURRENT_VERSION)));
+        String etag = mockMvc.perform(get("/posts/byuser/7"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/posts/byuser/7").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        when(postService.getStampByUserId(7L)).thenReturn(new PostListStamp(1, Instant.EPOCH, "linea2"));
+        mockMvc.perform(get("/posts/byuser/7").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    private static PostResponseDTO post(String userAlias, long version) {
+        return new PostResponseDTO(1L, "Title", "Content", 7L, userAlias, Instant.EPOCH, version);
+    }
+
+    private ResultActions update(String ifMatch) throws Exception {
+        var request = put("/posts/update/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"title\":\"Title\",\"content\":\"Updated content\"}");
+        if (ifMatch != null) {
+            request.header(HttpHeaders.IF_MATCH, ifMatch);
+        }
+        return mockMvc.perform(request);
+    }
+}
@@ -0,0 +1,66 @@
+package se.jensen.linea.onsocial_app.mapper;
+
+import org.junit.jupiter.api.Test;
+import se.jensen.linea.onsocial_app.DTO.UserResponseDTO;
+import se.jensen.linea.onsocial_app.model.User;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Kontrollerar att miniatyrernas URL:er räknas fram från profilbildens URL,
+ * och bara för bilder som har bearbetats vid uppladdningen till den konfigurerade lagringen.
+ */
+public class ProfilePictureMapperTest {
+
+    private static final String ID = "3f2a9c1e0b7d4e6f8a5b2c1d0e9f8a7b";
+
+    private final ProfilePictureMapper cloudinary = new ProfilePictureMapper("cloudinary", "demo", "http://localhost:8080");
+    private final ProfilePictureMapper local = new ProfilePictureMapper("local", "demo", "http://localhost:8080");
+
+    @Test
+    public void testThumbnailsOfProcessedPicture() {
+        String url = "https://res.cloudinary.com/demo/image/upload/v1700000000/profile_pictures/" + ID + ".jpg";
+
+        assertEquals(Map.of(
+                64, "https://res.cloudinary.com/demo/image/upload/v1700000000/profile_pictures/" + ID + "_64.jpg",
+                256, "https://res.cloudinary.com/demo/image/upload/v1700000000/profile_pictures/" + ID + "_256.jpg"
+        ), cloudinary.thumbnails(url));
+        assertEquals(ProfilePictureMapper.imageName(ID, "png"), ID + ".png");
+    }
+
+    @Test
+    public void testNoThumbnailsForOlderOrExternalPictures() {
+        assertTrue(cloudinary.thumbnails(null).isEmpty());
+        assertTrue(cloudinary.thumbnails("https://res.cloudinary.com/demo/image/upload/v1/profile_pictures/abc123.jpg").isEmpty());
+        assertTrue(cloudinary.thumbnails("https://example.com/" + ID + "_64.jpg").isEmpty());
+    }
+
+    @Test
+    public void testNoThumbnailsOutsideStorageOrFolder() {
+        // Another host, another Cloudinary account and another folder all follow the file name pattern
+        assertTrue(cloudinary.thumbnails("https://example.com/profile_pictures/" + ID + ".jpg").isEmpty());
+        assertTrue(cloudinary.thumbnails("https://res.cloudinary.com/other/image/upload/v1/profile_pictures/" + ID + ".jpg").isEmpty());
+        assertTrue(cloudinary.thumbnails("https://res.cloudinary.com/demo/image/upload/v1/posts/" + ID + ".jpg").isEmpty());
+        assertTrue(local.thumbnails("https://res.cloudinary.com/demo/image/upload/v1/profile_pictures/" + ID + ".jpg").isEmpty());
+    }
+
+    @Test
+    public void testUserResponseIncludesThumbnails() {
+        User user = new User();
+        user.setId(1L);
+        user.setAlias("linea");
+        user.setProfilePicture("http://localhost:8080/media/profile_pictures/" + ID + ".jpg");
+        UserMapper userMapper = new UserMapper(local);
+
+        assertEquals("http://localhost:8080/media/profile_pictures/" + ID + "_64.jpg",
+                userMapper.userToDTO(user).profilePictureVariants().get(64));
+
+        UserResponseDTO projected = new UserResponseDTO(1L, "linea", "linea@example.com", "Linea", "Jensen",
+                "http://localhost:8080/media/profile_pictures/" + ID + ".jpg", "USER");
+        assertTrue(projected.profilePictureVariants().isEmpty());
+        assertEquals("http://localhost:8080/media/profile_pictures/" + ID + "_256.jpg",
+                userMapper.withProfilePictureVariants(projected).profilePictureVariants().get(256));
+    }
+}
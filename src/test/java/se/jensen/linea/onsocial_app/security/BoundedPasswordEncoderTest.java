@@ -0,0 +1,79 @@
+package se.jensen.linea.onsocial_app.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import se.jensen.linea.onsocial_app.exception.PasswordHashingBusyException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedPasswordEncoderTest {
+
+    @Test
+    public void testEncodeAndMatches() {
+        try (BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(4, 1, 4, Duration.ofSeconds(1), new SimpleMeterRegistry())) {
+            String hash = encoder.encode("secret");
+
+            assertTrue(encoder.matches("secret", hash));
+            assertFalse(encoder.matches("wrong", hash));
+        }
+    }
+
+    @Test
+    public void testUpgradeEncodingWhenStrengthIsRaised() {
+        String oldHash = new BCryptPasswordEncoder(4).encode("secret");
+
+        try (BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(5, 1, 4, Duration.ofSeconds(1), new SimpleMeterRegistry())) {
+            assertTrue(encoder.upgradeEncoding(oldHash));
+            assertFalse(encoder.upgradeEncoding(encoder.encode("secret")));
+        }
+    }
+
+    @Test
+    public void testRejectsWhenQueueIsFull() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        // One thread, one queue slot and a slow cost: of five concurrent hashes at least three are rejected
+        ExecutorService callers = Executors.newFixedThreadPool(5);
+        try (BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(14, 1, 1, Duration.ofSeconds(2), meterRegistry)) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return encoder.encode("secret");
+                }, callers));
+            }
+            start.countDown();
+
+            long rejected = futures.stream()
+                    .filter(future -> {
+                        try {
+                            future.join();
+                            return false;
+                        } catch (CompletionException e) {
+                            return e.getCause() instanceof PasswordHashingBusyException;
+                        }
+                    })
+                    .count();
+
+            assertTrue(rejected >= 3, "rejected " + rejected);
+            assertEquals(rejected, (long) meterRegistry.get("auth.password.rejected").counter().count());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package se.jensen.linea.onsocial_app.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingJwtDecoderTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-01-01T12:00:00Z"));
+    private final AtomicInteger verifications = new AtomicInteger();
+
+    // Stands in for NimbusJwtDecoder, tokens starting with "bad" fail verification
+    private final JwtDecoder delegate = token -> {
+        verifications.incrementAndGet();
+        if (token.startsWith("bad")) {
+            throw new BadJwtException("Invalid signature");
+        }
+        return Jwt.withTokenValue(token)
+                .header("alg", "RS256")
+                .subject("linea")
+                .issuedAt(clock.instant())
+                .expiresAt(clock.instant().plus(Duration.ofHours(1)))
+                .build();
+    };
+
+    private final CachingJwtDecoder decoder = new CachingJwtDecoder(delegate, 100, new SimpleMeterRegistry(), clock);
+
+    @Test
+    public void testSameTokenIsVerifiedOnce() {
+        Jwt first = decoder.decode("token-a");
+        Jwt second = decoder.decode("token-a");
+
+        assertSame(first, second);
+        assertEquals(1, verifications.get());
+
+        decoder.decode("token-b");
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void testExpiredTokenIsVerifiedAgain() {
+        decoder.decode("token-a");
+
+        clock.advance(Duration.ofMinutes(61));
+        decoder.decode("token-a");
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void testInvalidTokenIsNeverCached() {
+        assertThrows(BadJwtException.class, () -> decoder.decode("bad-token"));
+        assertThrows(BadJwtException.class, () -> decoder.decode("bad-token"));
+
+        assertEquals(2, verifications.get());
+    }
+}
@@ -0,0 +1,74 @@
+package se.jensen.linea.onsocial_app.security;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import se.jensen.linea.onsocial_app.model.User;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Säkerställer att inloggningen hittar användaren med en enda SQL-fråga,
+ * oavsett om användaren loggar in med alias eller email.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import(CustomUserDetailsService.class)
+public class CustomUserDetailsServiceTest {
+
+    @Autowired
+    private CustomUserDetailsService customUserDetailsService;
+    @Autowired
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        User user = new User();
+        user.setAlias("linea");
+        user.setEmail("linea@example.com");
+        user.setFirstName("Linea");
+        user.setLastName("Jensen");
+        user.setPassword("secret");
+        entityManager.persist(user);
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void testLoadByAliasRunsOneStatement() {
+        CustomUserDetails userDetails = (CustomUserDetails) customUserDetailsService.loadUserByUsername("linea");
+
+        assertEquals("linea", userDetails.getUsername());
+        assertNotNull(userDetails.getUser());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testLoadByEmailRunsOneStatement() {
+        CustomUserDetails userDetails = (CustomUserDetails) customUserDetailsService.loadUserByUsername("linea@example.com");
+
+        assertEquals("linea", userDetails.getUsername());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testLoadUnknownUserThrows() {
+        assertThrows(UsernameNotFoundException.class,
+                () -> customUserDetailsService.loadUserByUsername("nobody"));
+    }
+}
@@ -0,0 +1,150 @@
+package se.jensen.linea.onsocial_app.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Signerar och verifierar JWT-token med alla algoritmer, och kontrollerar nyckelbyte med flera kid.
+ * <p>
+ * Kör med -Dbenchmark=true för att även mäta signeringar och verifieringar per sekund på den här maskinen.
+ */
+public class JwtKeyRingTest {
+
+    @ParameterizedTest
+    @EnumSource(JwtAlgorithm.class)
+    public void testSignAndVerify(JwtAlgorithm algorithm) throws Exception {
+        JwtKeyRing keyRing = new JwtKeyRing(generateKey("key-1", algorithm), List.of());
+
+        String token = new KeyRingJwtEncoder(keyRing).encode(parameters("linea")).getTokenValue();
+        Jwt jwt = keyRing.createDecoder().decode(token);
+
+        assertEquals("linea", jwt.getSubject());
+        assertEquals(42L, ((Number) jwt.getClaim("uid")).longValue());
+        assertEquals(algorithm.jwsAlgorithm().getName(), jwt.getHeaders().get("alg"));
+        assertEquals("key-1", jwt.getHeaders().get("kid"));
+    }
+
+    @Test
+    public void testPreviousKeyStillVerifiesAfterRotation() throws Exception {
+        JwtKey oldKey = generateKey("old", JwtAlgorithm.RS256);
+        JwtKey newKey = generateKey("new", JwtAlgorithm.ES256);
+        String oldToken = new KeyRingJwtEncoder(new JwtKeyRing(oldKey, List.of())).encode(parameters("linea")).getTokenValue();
+
+        JwtKeyRing rotated = new JwtKeyRing(newKey, List.of(publicOnly(oldKey)));
+        String newToken = new KeyRingJwtEncoder(rotated).encode(parameters("linea")).getTokenValue();
+        JwtDecoder decoder = rotated.createDecoder();
+
+        assertEquals("old", decoder.decode(oldToken).getHeaders().get("kid"));
+        assertEquals("new", decoder.decode(newToken).getHeaders().get("kid"));
+        assertEquals(2, rotated.toPublicJwkSet().getKeys().size());
+    }
+
+    @Test
+    public void testUnknownKeyIsRejected() throws Exception {
+        JwtKeyRing other = new JwtKeyRing(generateKey("other", JwtAlgorithm.EdDSA), List.of());
+        String token = new KeyRingJwtEncoder(other).encode(parameters("linea")).getTokenValue();
+
+        JwtKeyRing keyRing = new JwtKeyRing(generateKey("key-1", JwtAlgorithm.EdDSA), List.of());
+
+        assertThrows(BadJwtException.class, () -> keyRing.createDecoder().decode(token));
+    }
+
+    @Test
+    public void testParsesPreviousKeysFromProperties() throws Exception {
+        JwtKey signing = generateKey("current", JwtAlgorithm.EdDSA);
+        JwtKey previous = generateKey("previous", JwtAlgorithm.ES256);
+
+        JwtKeyRing keyRing = JwtKeyRing.from("eddsa", "current",
+                Base64.getEncoder().encodeToString(signing.privateKey().getEncoded()),
+                Base64.getEncoder().encodeToString(signing.publicKey().getEncoded()),
+                "previous:ES256:" + Base64.getEncoder().encodeToString(previous.publicKey().getEncoded()));
+
+        assertEquals(JwtAlgorithm.EdDSA, keyRing.signingKey().algorithm());
+        assertNotNull(keyRing.toPublicJwkSet().getKeyByKeyId("previous"));
+        assertNull(keyRing.toPublicJwkSet().getKeyByKeyId("previous").toJSONObject().get("d"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(JwtAlgorithm.class)
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void benchmarkSignAndVerify(JwtAlgorithm algorithm) throws Exception {
+        JwtKeyRing keyRing = new JwtKeyRing(generateKey("bench", algorithm), List.of());
+        JwtEncoder encoder = new KeyRingJwtEncoder(keyRing);
+        JwtDecoder decoder = keyRing.createDecoder();
+        String token = encoder.encode(parameters("linea")).getTokenValue();
+
+        // Warm up the JIT before measuring
+        long warmUpEnd = System.nanoTime() + 2_000_000_000L;
+        while (System.nanoTime() < warmUpEnd) {
+            encoder.encode(parameters("linea"));
+            decoder.decode(token);
+        }
+
+        double signPerSecond = opsPerSecond(() -> encoder.encode(parameters("linea")));
+        double verifyPerSecond = opsPerSecond(() -> decoder.decode(token));
+
+        System.out.printf("%-6s sign %,10.0f ops/s   verify %,10.0f ops/s%n", algorithm, signPerSecond, verifyPerSecond);
+    }
+
+    private static double opsPerSecond(Runnable operation) {
+        long start = System.nanoTime();
+        long end = start + 3_000_000_000L;
+        long count = 0;
+        long now;
+        do {
+            operation.run();
+            count++;
+            now = System.nanoTime();
+        } while (now < end);
+        return count / ((now - start) / 1e9);
+    }
+
+    private static JwtEncoderParameters parameters(String subject) {
+        Instant now = Instant.now();
+        JwtClaimsSet claims = JwtClaimsSet.builder()
+                .issuer("self")
+                .issuedAt(now)
+                .expiresAt(now.plus(1, ChronoUnit.HOURS))
+                .subject(subject)
+                .claim("scope", "ROLE_USER")
+                .claim("uid", 42L)
+                .claim("role", "ROLE_USER")
+                .build();
+        return JwtEncoderParameters.from(claims);
+    }
+
+    private static JwtKey generateKey(String keyId, JwtAlgorithm algorithm) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm.keyAlgorithm());
+        switch (algorithm) {
+            case RS256 -> generator.initialize(2048);
+            case ES256 -> generator.initialize(new ECGenParameterSpec("secp256r1"));
+            case EdDSA -> {
+                // Ed25519 has a single key size
+            }
+        }
+        KeyPair keyPair = generator.generateKeyPair();
+        return new JwtKey(keyId, algorithm, keyPair.getPublic(), keyPair.getPrivate());
+    }
+
+    private static JwtKey publicOnly(JwtKey key) {
+        return new JwtKey(key.keyId(), key.algorithm(), key.publicKey(), null);
+    }
+}
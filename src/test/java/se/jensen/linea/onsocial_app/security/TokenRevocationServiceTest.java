@@ -0,0 +1,89 @@
+package se.jensen.linea.onsocial_app.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import se.jensen.linea.onsocial_app.model.RevokedToken;
+import se.jensen.linea.onsocial_app.repository.RevokedTokenRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Kontrollerar spärrlistan för access tokens: spärr, inläsning från databasen och rensning vid utgång.
+ * <p>
+ * Kör med -Dbenchmark=true för att även mäta kontrollen som görs vid varje anrop.
+ */
+public class TokenRevocationServiceTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-01-01T12:00:00Z"));
+    private final RevokedTokenRepository repository = mock(RevokedTokenRepository.class);
+    private final TokenRevocationService service =
+            new TokenRevocationService(repository, 100, new SimpleMeterRegistry(), clock);
+
+    @Test
+    public void testRevokedTokenIsRejectedAndPersisted() {
+        service.revoke("jti-1", clock.instant().plus(Duration.ofHours(1)));
+
+        assertTrue(service.isRevoked("jti-1"));
+        assertFalse(service.isRevoked("jti-2"));
+        assertFalse(service.isRevoked(null));
+        verify(repository).save(any(RevokedToken.class));
+    }
+
+    @Test
+    public void testRefreshLoadsRevocationsFromOtherInstances() {
+        when(repository.findByExpiresAtAfter(any()))
+                .thenReturn(List.of(new RevokedToken("jti-other", clock.instant().plus(Duration.ofHours(1)))));
+
+        service.refresh();
+
+        assertTrue(service.isRevoked("jti-other"));
+        verify(repository).deleteExpired(clock.instant());
+    }
+
+    @Test
+    public void testRevocationIsDroppedWhenTokenExpires() {
+        service.revoke("jti-1", clock.instant().plus(Duration.ofMinutes(10)));
+
+        clock.advance(Duration.ofMinutes(11));
+        service.refresh();
+
+        assertFalse(service.isRevoked("jti-1"));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void benchmarkIsRevoked() {
+        TokenRevocationService large = new TokenRevocationService(repository, 100_000, new SimpleMeterRegistry(), clock);
+        for (int i = 0; i < 100_000; i++) {
+            large.revoke(UUID.randomUUID().toString(), clock.instant().plus(Duration.ofHours(1)));
+        }
+        List<String> unknown = new ArrayList<>();
+        for (int i = 0; i < 1024; i++) {
+            unknown.add(UUID.randomUUID().toString());
+        }
+
+        // Warm up the JIT before measuring
+        long hits = 0;
+        for (int i = 0; i < 20_000_000; i++) {
+            hits += large.isRevoked(unknown.get(i & 1023)) ? 1 : 0;
+        }
+
+        int operations = 50_000_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            hits += large.isRevoked(unknown.get(i & 1023)) ? 1 : 0;
+        }
+        double nanosPerCheck = (double) (System.nanoTime() - start) / operations;
+
+        System.out.printf("isRevoked (not revoked) %.1f ns/op, %d hits%n", nanosPerCheck, hits);
+    }
+}
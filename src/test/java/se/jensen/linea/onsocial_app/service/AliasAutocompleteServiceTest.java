@@ -0,0 +1,103 @@
+package se.jensen.linea.onsocial_app.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.transaction.PlatformTransactionManager;
+import se.jensen.linea.onsocial_app.DTO.AliasSuggestionDTO;
+import se.jensen.linea.onsocial_app.repository.UserRepository;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Kontrollerar förslagen från aliasindexet och att det följer ändringar av användare.
+ * <p>
+ * Kör med -Dbenchmark=true för att även mäta tiden per förslag med många alias i indexet.
+ */
+public class AliasAutocompleteServiceTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final AliasAutocompleteService service =
+            new AliasAutocompleteService(userRepository, mock(PlatformTransactionManager.class));
+
+    @Test
+    public void testCompletesPrefixCaseInsensitiveInOrder() {
+        when(userRepository.streamAliasSuggestions()).thenReturn(Stream.of(
+                suggestion(1L, "linus"), suggestion(2L, "Linea"), suggestion(3L, "lina"),
+                suggestion(4L, "bob"), suggestion(5L, "li")));
+        service.rebuild();
+
+        assertEquals(List.of("li", "lina", "Linea", "linus"), aliases(service.complete("LI", null)));
+        assertEquals(List.of("li", "lina"), aliases(service.complete("li", 2)));
+        assertEquals(List.of(), aliases(service.complete("x", null)));
+    }
+
+    @Test
+    public void testFollowsCreateRenameAndDelete() {
+        service.put(suggestion(1L, "linea"));
+        service.put(suggestion(1L, "simeon"));
+        service.put(suggestion(2L, "lina"));
+
+        assertEquals(List.of("lina"), aliases(service.complete("lin", null)));
+        assertEquals(List.of("simeon"), aliases(service.complete("s", null)));
+
+        service.remove(2L);
+        assertEquals(List.of(), aliases(service.complete("lin", null)));
+    }
+
+    @Test
+    public void testChangesDuringRebuildAreKept() {
+        // The stream still holds the old alias for user 1 and the deleted user 2
+        when(userRepository.streamAliasSuggestions()).thenAnswer(invocation -> {
+            service.put(suggestion(1L, "renamed"));
+            service.remove(2L);
+            return Stream.of(suggestion(1L, "original"), suggestion(2L, "deleted"));
+        });
+
+        service.rebuild();
+
+        assertEquals(List.of("renamed"), aliases(service.complete("", null)));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void benchmarkComplete() {
+        Random random = new Random(42);
+        when(userRepository.streamAliasSuggestions()).thenReturn(LongStream.range(0, 1_000_000)
+                .mapToObj(id -> suggestion(id, Long.toString(random.nextLong() & Long.MAX_VALUE, 36))));
+        service.rebuild();
+
+        String[] prefixes = new String[1024];
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = Long.toString(random.nextLong() & Long.MAX_VALUE, 36).substring(0, 1 + i % 3);
+        }
+
+        // Warm up the JIT before measuring
+        long found = 0;
+        for (int i = 0; i < 200_000; i++) {
+            found += service.complete(prefixes[i & 1023], 10).size();
+        }
+
+        int operations = 1_000_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            found += service.complete(prefixes[i & 1023], 10).size();
+        }
+        double microsPerCall = (System.nanoTime() - start) / 1_000.0 / operations;
+
+        System.out.printf("complete (1M aliases, top 10) %.2f us/op, %d found%n", microsPerCall, found);
+    }
+
+    private static AliasSuggestionDTO suggestion(Long id, String alias) {
+        return new AliasSuggestionDTO(id, alias, null);
+    }
+
+    private static List<String> aliases(List<AliasSuggestionDTO> suggestions) {
+        return suggestions.stream().map(AliasSuggestionDTO::alias).toList();
+    }
+}
@@ -0,0 +1,250 @@
+package se.jensen.linea.onsocial_app.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import se.jensen.linea.onsocial_app.mapper.ProfilePictureMapper;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Kontrollerar bearbetningen av uppladdade bilder: förminskning, miniatyrer, borttagen metadata,
+ * rotation enligt EXIF och att filer som inte är bilder avvisas.
+ * <p>
+ * Kör med -Dbenchmark=true för att även mäta genomströmning och sparade bytes för mobilbilder.
+ */
+public class ImageProcessingServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ImageProcessingService service =
+            new ImageProcessingService(1280, 50_000_000, 0.85f, 2, new SimpleMeterRegistry());
+
+    @AfterEach
+    public void tearDown() {
+        service.close();
+    }
+
+    @Test
+    public void testDownscalesReencodesAndCreatesThumbnails() throws IOException {
+        Path upload = tempDir.resolve("photo.jpg");
+        Files.write(upload, withExif(jpeg(photo(3000, 2000, 40), 0.95f), 1));
+
+        ImageProcessingService.ProcessedImage processed = service.process(upload, Files.createDirectory(tempDir.resolve("out")));
+
+        assertEquals("jpg", processed.extension());
+        assertDimensions(processed.image(), 1280, 853);
+        assertEquals(ProfilePictureMapper.THUMBNAIL_SIZES, List.copyOf(processed.thumbnails().keySet()));
+        assertDimensions(processed.thumbnails().get(256), 256, 171);
+        assertDimensions(processed.thumbnails().get(64), 64, 43);
+        assertTrue(Files.size(processed.image()) < Files.size(upload) / 4);
+        assertFalse(hasMetadataMarkers(processed.image()), "EXIF and comments must be stripped");
+    }
+
+    @Test
+    public void testRotatesAccordingToExifOrientation() throws IOException {
+        // Red left half, blue right half, stored landscape with "rotate 90° clockwise" in EXIF
+        BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 200; y++) {
+            for (int x = 0; x < 300; x++) {
+                image.setRGB(x, y, x < 150 ? 0xff0000 : 0x0000ff);
+            }
+        }
+        Path upload = tempDir.resolve("rotated.jpg");
+        Files.write(upload, withExif(jpeg(image, 0.95f), 6));
+
+        ImageProcessingService.ProcessedImage processed = service.process(upload, Files.createDirectory(tempDir.resolve("out")));
+
+        BufferedImage result = ImageIO.read(processed.image().toFile());
+        assertEquals(200, result.getWidth());
+        assertEquals(300, result.getHeight());
+        // Left becomes top after a clockwise turn
+        assertTrue(((result.getRGB(100, 30) >> 16) & 0xff) > 200);
+        assertTrue((result.getRGB(100, 270) & 0xff) > 200);
+    }
+
+    @Test
+    public void testTransparentImageStaysPng() throws IOException {
+        BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(10, 10, 0x80ff0000);
+        Path upload = tempDir.resolve("logo.png");
+        ImageIO.write(image, "png", upload.toFile());
+
+        ImageProcessingService.ProcessedImage processed = service.process(upload, Files.createDirectory(tempDir.resolve("out")));
+
+        assertEquals("png", processed.extension());
+        assertDimensions(processed.image(), 400, 400);
+        assertDimensions(processed.thumbnails().get(64), 64, 64);
+        assertTrue(ImageIO.read(processed.image().toFile()).getColorModel().hasAlpha());
+    }
+
+    @Test
+    public void testRejectsFilesThatAreNotImagesOrTooLarge() throws IOException {
+        Path text = Files.writeString(tempDir.resolve("notes.png"), "not an image");
+        Path out = Files.createDirectory(tempDir.resolve("out"));
+        assertThrows(IllegalArgumentException.class, () -> service.process(text, out));
+
+        ImageProcessingService small = new ImageProcessingService(1280, 1000, 0.85f, 1, new SimpleMeterRegistry());
+        try {
+            Path upload = tempDir.resolve("big.jpg");
+            Files.write(upload, jpeg(photo(100, 100, 0), 0.9f));
+            assertThrows(IllegalArgumentException.class, () -> small.process(upload, out));
+        } finally {
+            small.close();
+        }
+    }
+
+    @Test
+    public void testExifOrientationParsing() {
+        assertEquals(6, ImageProcessingService.exifOrientation(exif(6, false)));
+        assertEquals(8, ImageProcessingService.exifOrientation(exif(8, true)));
+        assertEquals(0, ImageProcessingService.exifOrientation("Exif\0\0MM".getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(0, ImageProcessingService.exifOrientation("http://ns.adobe.com/xap/1.0/".getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void benchmarkPhoneSizedPhotos() throws Exception {
+        int photos = 24;
+        List<Path> uploads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Path upload = tempDir.resolve("phone-" + i + ".jpg");
+            Files.write(upload, withExif(jpeg(photo(4032, 3024, 40 + i), 0.92f), 6));
+            uploads.add(upload);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        ImageProcessingService pool = new ImageProcessingService(1280, 50_000_000, 0.85f, threads, new SimpleMeterRegistry());
+        ExecutorService callers = Executors.newFixedThreadPool(threads);
+        try {
+            // Warm up the JIT and the codecs
+            pool.process(uploads.get(0), Files.createTempDirectory(tempDir, "warmup"));
+
+            long originalBytes = 0;
+            long processedBytes = 0;
+            long start = System.nanoTime();
+            List<Future<ImageProcessingService.ProcessedImage>> results = new ArrayList<>();
+            for (int i = 0; i < photos; i++) {
+                Path upload = uploads.get(i % uploads.size());
+                Path out = Files.createTempDirectory(tempDir, "out");
+                results.add(callers.submit(() -> pool.process(upload, out)));
+                originalBytes += Files.size(upload);
+            }
+            for (Future<ImageProcessingService.ProcessedImage> result : results) {
+                ImageProcessingService.ProcessedImage processed = result.get();
+                processedBytes += Files.size(processed.image());
+                for (Path thumbnail : processed.thumbnails().values()) {
+                    processedBytes += Files.size(thumbnail);
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%d photos 4032x3024 on %d threads: %.1f photos/s, %.1f MB in, %.2f MB out (%.1f%% saved)%n",
+                    photos, threads, photos / seconds, originalBytes / 1e6, processedBytes / 1e6,
+                    100.0 * (originalBytes - processedBytes) / originalBytes);
+        } finally {
+            callers.shutdownNow();
+            pool.close();
+        }
+    }
+
+    // A smooth gradient with some noise, compresses roughly like a photo
+    private static BufferedImage photo(int width, int height, int noise) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(noise);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int n = noise > 0 ? random.nextInt(noise) : 0;
+                int r = Math.min(255, x * 255 / width + n / 2);
+                int g = Math.min(255, y * 255 / height + n / 3);
+                int b = Math.min(255, (x + y) * 255 / (width + height) + n);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] jpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    // Inserts an APP1 EXIF segment with the orientation and a camera model right after SOI
+    private static byte[] withExif(byte[] jpeg, int orientation) {
+        byte[] exif = exif(orientation, false);
+        ByteBuffer result = ByteBuffer.allocate(jpeg.length + exif.length + 4);
+        result.put(jpeg, 0, 2);
+        result.put((byte) 0xff).put((byte) 0xe1).putShort((short) (exif.length + 2));
+        result.put(exif);
+        result.put(jpeg, 2, jpeg.length - 2);
+        return result.array();
+    }
+
+    private static byte[] exif(int orientation, boolean littleEndian) {
+        ByteBuffer exif = ByteBuffer.allocate(6 + 8 + 2 + 2 * 12 + 4 + 8);
+        exif.put("Exif\0\0".getBytes(StandardCharsets.ISO_8859_1));
+        ByteBuffer tiff = exif.slice().order(littleEndian ? java.nio.ByteOrder.LITTLE_ENDIAN : java.nio.ByteOrder.BIG_ENDIAN);
+        tiff.put((byte) (littleEndian ? 'I' : 'M')).put((byte) (littleEndian ? 'I' : 'M')).putShort((short) 42).putInt(8);
+        tiff.putShort((short) 2);
+        // Model (ASCII, stored after the directory) and orientation (SHORT)
+        tiff.putShort((short) 0x0110).putShort((short) 2).putInt(8).putInt(8 + 2 + 2 * 12 + 4);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(0);
+        tiff.put("Phone 7\0".getBytes(StandardCharsets.ISO_8859_1));
+        return exif.array();
+    }
+
+    private static void assertDimensions(Path image, int width, int height) throws IOException {
+        BufferedImage read = ImageIO.read(image.toFile());
+        assertEquals(width, read.getWidth());
+        assertEquals(height, read.getHeight());
+    }
+
+    private static boolean hasMetadataMarkers(Path jpeg) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(jpeg.toFile())) {
+            ImageReader reader = ImageIO.getImageReaders(input).next();
+            try {
+                reader.setInput(input);
+                IIOMetadataNode root = (IIOMetadataNode) reader.getImageMetadata(0).getAsTree("javax_imageio_jpeg_image_1.0");
+                return root.getElementsByTagName("unknown").getLength() > 0
+                        || root.getElementsByTagName("com").getLength() > 0;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package se.jensen.linea.onsocial_app.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.jensen.linea.onsocial_app.DTO.PostRequestDTO;
+import se.jensen.linea.onsocial_app.DTO.PostResponseDTO;
+import se.jensen.linea.onsocial_app.config.CacheConfig;
+import se.jensen.linea.onsocial_app.config.ReadYourWritesTracker;
+import se.jensen.linea.onsocial_app.config.ReplicaRoutingDataSource;
+import se.jensen.linea.onsocial_app.model.User;
+import se.jensen.linea.onsocial_app.repository.UserRepository;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Säkerställer att cachen för enskilda inlägg inte fylls med gammal data, varken från en replik
+ * som ligger efter eller av en läsning som sker innan en ändring har committats.
+ * <p>
+ * Två H2-databaser i minnet används som primärdatabas och replik. Repliken är en kopia av primärdatabasen
+ * som sedan aldrig uppdateras, alltså en replik som ligger efter. Testerna körs utan omslutande transaktion
+ * så att varje anrop committas för sig, precis som i applikationen.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({PostService.class, CacheConfig.class, PostServiceCacheTest.ReplicaConfig.class})
+public class PostServiceCacheTest {
+
+    @Autowired
+    private PostService postService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ReplicaRoutingDataSource routingDataSource;
+    @Autowired
+    private HikariDataSource replicaDataSource;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+    private TransactionTemplate transactionTemplate;
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        primary = new JdbcTemplate(routingDataSource.getPrimary());
+        replica = new JdbcTemplate(replicaDataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        user = new User();
+        user.setAlias("writer");
+        user.setEmail("writer@example.com");
+        user.setFirstName("First");
+        user.setLastName("Last");
+        user.setPassword("secret");
+        user = userRepository.save(user);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cacheManager.getCache(CacheConfig.POSTS_CACHE).clear();
+        primary.update("DELETE FROM posts");
+        primary.update("DELETE FROM users");
+        replica.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    public void testFindByIdDoesNotCacheRowFromLaggingReplica() {
+        Long id = postService.createPost(user.getId(), user.getAlias(), new PostRequestDTO("Original", "Content")).id();
+        copyPrimaryToReplica();
+
+        postService.updatePost(id, new PostRequestDTO("Updated", "Content"), null);
+
+        // Other read-only queries still see the lagging replica
+        assertEquals("Original", postService.findAllByUserId(user.getId()).get(0).title());
+
+        assertEquals("Updated", postService.findById(id).title());
+        assertEquals("Updated", cachedPost(id).title());
+    }
+
+    @Test
+    public void testReadBetweenFlushAndCommitDoesNotKeepOldPost() throws Exception {
+        Long id = postService.createPost(user.getId(), user.getAlias(), new PostRequestDTO("Original", "Content")).id();
+        assertEquals("Original", postService.findById(id).title());
+
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // Flushed but not committed yet
+                postService.updatePost(id, new PostRequestDTO("Updated", "Content"), null);
+                try {
+                    // A concurrent reader still sees the committed row
+                    assertEquals("Original", reader.submit(() -> postService.findById(id)).get().title());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } finally {
+            reader.shutdownNow();
+        }
+
+        assertEquals("Updated", postService.findById(id).title());
+        assertEquals("Updated", cachedPost(id).title());
+    }
+
+    @Test
+    public void testDeleteEvictsCachedPost() {
+        Long id = postService.createPost(user.getId(), user.getAlias(), new PostRequestDTO("Original", "Content")).id();
+        postService.findById(id);
+        copyPrimaryToReplica();
+
+        assertTrue(postService.deletePost(id));
+
+        assertNull(cachedPost(id));
+    }
+
+    private PostResponseDTO cachedPost(Long id) {
+        return cacheManager.getCache(CacheConfig.POSTS_CACHE).get(id, PostResponseDTO.class);
+    }
+
+    /**
+     * Tar en ögonblicksbild av primärdatabasen (schema och data) och läser in den i repliken.
+     */
+    private void copyPrimaryToReplica() {
+        List<String> script = primary.queryForList("SCRIPT", String.class);
+        script.forEach(replica::execute);
+    }
+
+    @TestConfiguration
+    static class ReplicaConfig {
+
+        @Bean(destroyMethod = "")
+        public HikariDataSource replicaDataSource() {
+            return dataSource("jdbc:h2:mem:cache-replica;DB_CLOSE_DELAY=-1");
+        }
+
+        @Bean
+        public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource replicaDataSource) {
+            HikariDataSource primary = dataSource("jdbc:h2:mem:cache-primary;DB_CLOSE_DELAY=-1");
+            return new ReplicaRoutingDataSource(primary, List.of(replicaDataSource),
+                    new ReadYourWritesTracker(Duration.ofSeconds(5)), Duration.ofSeconds(30));
+        }
+
+        @Bean
+        @Primary
+        public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+            LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(replicaRoutingDataSource.getPrimary());
+            dataSource.setReadOnlyDataSource(replicaRoutingDataSource);
+            return dataSource;
+        }
+
+        @Bean
+        public CacheManager cacheManager() {
+            return new ConcurrentMapCacheManager(CacheConfig.POSTS_CACHE);
+        }
+
+        private static HikariDataSource dataSource(String url) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setJdbcUrl(url);
+            dataSource.setUsername("sa");
+            dataSource.setPassword("");
+            return dataSource;
+        }
+    }
+}
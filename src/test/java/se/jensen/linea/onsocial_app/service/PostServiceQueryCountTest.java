@@ -0,0 +1,115 @@
+package se.jensen.linea.onsocial_app.service;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import se.jensen.linea.onsocial_app.DTO.CursorPageDTO;
+import se.jensen.linea.onsocial_app.DTO.PostRequestDTO;
+import se.jensen.linea.onsocial_app.DTO.PostResponseDTO;
+import se.jensen.linea.onsocial_app.model.Post;
+import se.jensen.linea.onsocial_app.model.User;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Säkerställer att läsvägarna för inlägg körs som exakt en SQL-fråga,
+ * oavsett hur många olika författare som finns i listan (ingen N+1 på Post.user),
+ * och att ett nytt inlägg skapas utan att användaren läses från databasen.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import(PostService.class)
+public class PostServiceQueryCountTest {
+
+    @Autowired
+    private PostService postService;
+    @Autowired
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+    private Long firstUserId;
+
+    @BeforeEach
+    public void setUp() {
+        for (int i = 0; i < 5; i++) {
+            User user = new User();
+            user.setAlias("alias" + i);
+            user.setEmail("user" + i + "@example.com");
+            user.setFirstName("First");
+            user.setLastName("Last");
+            user.setPassword("secret");
+            entityManager.persist(user);
+            if (firstUserId == null) {
+                firstUserId = user.getId();
+            }
+
+            for (int j = 0; j < 3; j++) {
+                Post post = new Post("Title " + j, "Content for post " + j);
+                post.setUser(user);
+                entityManager.persist(post);
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void testFindAllRunsOneStatement() {
+        CursorPageDTO<PostResponseDTO> page = postService.findAll(10, null);
+
+        assertEquals(10, page.items().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        CursorPageDTO<PostResponseDTO> nextPage = postService.findAll(10, page.next());
+
+        assertEquals(5, nextPage.items().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testFindAllByUserIdRunsOneStatement() {
+        List<PostResponseDTO> posts = postService.findAllByUserId(firstUserId);
+
+        assertEquals(3, posts.size());
+        assertEquals("alias0", posts.get(0).userAlias());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testFindByIdRunsOneStatement() {
+        Long postId = postService.findAllByUserId(firstUserId).get(0).id();
+        statistics.clear();
+
+        PostResponseDTO post = postService.findById(postId);
+
+        assertEquals(postId, post.id());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testCreatePostReadsNoUser() {
+        PostResponseDTO created = postService.createPost(firstUserId, "alias0", new PostRequestDTO("New title", "New content"));
+        entityManager.flush();
+
+        assertEquals(firstUserId, created.userId());
+        assertEquals("alias0", created.userAlias());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getEntityFetchCount());
+        assertEquals(1, statistics.getEntityInsertCount());
+    }
+}
@@ -0,0 +1,88 @@
+package se.jensen.linea.onsocial_app.service;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.BadCredentialsException;
+import se.jensen.linea.onsocial_app.model.User;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Säkerställer att refresh tokens roteras, att återanvändning spärrar hela inloggningen
+ * och att utloggning spärrar token.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import(RefreshTokenService.class)
+public class RefreshTokenServiceTest {
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+    @Autowired
+    private EntityManager entityManager;
+
+    private Long userId;
+
+    @BeforeEach
+    public void setUp() {
+        User user = new User();
+        user.setAlias("linea");
+        user.setEmail("linea@example.com");
+        user.setFirstName("Linea");
+        user.setLastName("Jensen");
+        user.setPassword("secret");
+        entityManager.persist(user);
+        entityManager.flush();
+        userId = user.getId();
+    }
+
+    @Test
+    public void testRotateIssuesNewTokenForSameUser() {
+        String first = refreshTokenService.issue(userId);
+        flushAndClear();
+
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(first);
+        flushAndClear();
+
+        assertEquals("linea", rotation.user().getAlias());
+        assertNotEquals(first, rotation.refreshToken());
+        assertDoesNotThrow(() -> refreshTokenService.rotate(rotation.refreshToken()));
+    }
+
+    @Test
+    public void testReuseRevokesWholeFamily() {
+        String first = refreshTokenService.issue(userId);
+        flushAndClear();
+        String second = refreshTokenService.rotate(first).refreshToken();
+        flushAndClear();
+
+        // The old token shows up again, e.g. stolen and replayed
+        assertThrows(BadCredentialsException.class, () -> refreshTokenService.rotate(first));
+        flushAndClear();
+
+        // The legitimate client's current token is revoked as well
+        assertThrows(BadCredentialsException.class, () -> refreshTokenService.rotate(second));
+    }
+
+    @Test
+    public void testRevokedTokenCannotBeUsed() {
+        String token = refreshTokenService.issue(userId);
+        String otherLogin = refreshTokenService.issue(userId);
+        flushAndClear();
+
+        refreshTokenService.revoke(token);
+        refreshTokenService.revoke("unknown");
+        flushAndClear();
+
+        assertThrows(BadCredentialsException.class, () -> refreshTokenService.rotate(token));
+        assertDoesNotThrow(() -> refreshTokenService.rotate(otherLogin));
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
@@ -0,0 +1,130 @@
+package se.jensen.linea.onsocial_app.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.jensen.linea.onsocial_app.DTO.ProfilePictureDTO;
+import se.jensen.linea.onsocial_app.DTO.UploadJobDTO;
+import se.jensen.linea.onsocial_app.exception.UploadBusyException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Kontrollerar uppladdningar i bakgrunden: status från PENDING till DONE eller FAILED,
+ * att filen tas bort efteråt och att en full kö avvisas direkt.
+ */
+public class UploadJobServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final ProfilePictureDTO PICTURE = new ProfilePictureDTO(
+            "https://media.example.com/profile_pictures/a.jpg",
+            Map.of(64, "https://media.example.com/profile_pictures/a_64.jpg"));
+
+    private final CountDownLatch storageRelease = new CountDownLatch(1);
+    private final ProfilePictureService profilePictureService = mock(ProfilePictureService.class);
+    private UploadJobService service;
+
+    @AfterEach
+    public void tearDown() {
+        storageRelease.countDown();
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    @Test
+    public void testJobIsPendingUntilStoredThenDone() throws Exception {
+        when(profilePictureService.upload(any())).thenAnswer(invocation -> {
+            awaitRelease();
+            return PICTURE;
+        });
+        service = service(1, 1);
+        Path file = upload("a.png");
+
+        UploadJobDTO job = service.submit(file);
+        assertEquals(UploadJobDTO.Status.PENDING, job.status());
+        assertEquals(job, service.getJob(job.id()).orElseThrow());
+
+        storageRelease.countDown();
+        UploadJobDTO done = awaitFinished(job.id());
+        assertEquals(UploadJobDTO.Status.DONE, done.status());
+        assertEquals(PICTURE.url(), done.url());
+        assertEquals(PICTURE.variants(), done.variants());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testFailedUploadReportsError() throws Exception {
+        when(profilePictureService.upload(any())).thenThrow(new IOException("storage unavailable"));
+        service = service(1, 1);
+        Path file = upload("a.png");
+
+        UploadJobDTO job = service.submit(file);
+
+        UploadJobDTO failed = awaitFinished(job.id());
+        assertEquals(UploadJobDTO.Status.FAILED, failed.status());
+        assertEquals("Upload failed: storage unavailable", failed.error());
+        assertFalse(Files.exists(file));
+        assertTrue(service.getJob("unknown").isEmpty());
+    }
+
+    @Test
+    public void testFullQueueIsRejected() throws Exception {
+        when(profilePictureService.upload(any())).thenAnswer(invocation -> {
+            awaitRelease();
+            return PICTURE;
+        });
+        service = service(1, 1);
+        // One upload runs, one waits in the queue
+        service.submit(upload("running.png"));
+        service.submit(upload("queued.png"));
+        Path rejected = upload("rejected.png");
+
+        UploadBusyException e = assertThrows(UploadBusyException.class,
+                () -> service.submit(rejected));
+        assertEquals(Duration.ofSeconds(2), e.getRetryAfter());
+        assertFalse(Files.exists(rejected));
+    }
+
+    private UploadJobService service(int workers, int queueCapacity) {
+        return new UploadJobService(profilePictureService, workers, queueCapacity, Duration.ofSeconds(2), Duration.ofMinutes(5),
+                1000, new SimpleMeterRegistry());
+    }
+
+    private Path upload(String name) throws IOException {
+        return Files.writeString(tempDir.resolve(name), "image");
+    }
+
+    private void awaitRelease() throws IOException {
+        try {
+            storageRelease.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private UploadJobDTO awaitFinished(String id) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        UploadJobDTO job = service.getJob(id).orElseThrow();
+        while (job.status() == UploadJobDTO.Status.PENDING && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            job = service.getJob(id).orElseThrow();
+        }
+        return job;
+    }
+}
@@ -0,0 +1,123 @@
+package se.jensen.linea.onsocial_app.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import se.jensen.linea.onsocial_app.model.User;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Säkerställer att lediga alias och email besvaras av filtren utan databasfråga,
+ * och att upptagna värden alltid bekräftas mot databasen.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import({UserAvailabilityService.class, SimpleMeterRegistry.class})
+public class UserAvailabilityServiceTest {
+
+    @Autowired
+    private UserAvailabilityService userAvailabilityService;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        User user = new User();
+        user.setAlias("linea");
+        user.setEmail("linea@example.com");
+        user.setFirstName("Linea");
+        user.setLastName("Jensen");
+        user.setPassword("secret");
+        entityManager.persist(user);
+        entityManager.flush();
+
+        userAvailabilityService.rebuild();
+
+        statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void testFreeValuesSkipTheDatabase() {
+        for (int i = 0; i < 100; i++) {
+            // A rare false positive is allowed, it is answered correctly by the database
+            assertFalse(userAvailabilityService.isAliasTaken("free-alias-" + i));
+            assertFalse(userAvailabilityService.isEmailTaken("free-" + i + "@example.com"));
+        }
+
+        assertTrue(statistics.getPrepareStatementCount() <= 5,
+                "Expected almost no queries, got " + statistics.getPrepareStatementCount());
+        assertTrue(meterRegistry.get("auth.availability.checks").tag("result", "not_present").counters().stream()
+                .mapToDouble(counter -> counter.count()).sum() >= 195);
+    }
+
+    @Test
+    public void testTakenValuesAreConfirmedByTheDatabase() {
+        assertTrue(userAvailabilityService.isAliasTaken("linea"));
+        assertTrue(userAvailabilityService.isEmailTaken("linea@example.com"));
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testNewUserIsAddedWithoutRebuild() {
+        User user = new User();
+        user.setAlias("simeon");
+        user.setEmail("simeon@example.com");
+        user.setFirstName("Simeon");
+        user.setLastName("Jensen");
+        user.setPassword("secret");
+        entityManager.persist(user);
+        entityManager.flush();
+
+        assertFalse(userAvailabilityService.isAliasTaken("simeon"));
+
+        userAvailabilityService.taken("simeon", "simeon@example.com");
+
+        assertTrue(userAvailabilityService.isAliasTaken("simeon"));
+        assertTrue(userAvailabilityService.isEmailTaken("simeon@example.com"));
+    }
+
+    @Test
+    public void testUserFromAnotherInstanceIsAddedByRebuild() {
+        // Registered by another instance, so taken() is never called here
+        User user = new User();
+        user.setAlias("elsewhere");
+        user.setEmail("elsewhere@example.com");
+        user.setFirstName("Else");
+        user.setLastName("Where");
+        user.setPassword("secret");
+        entityManager.persist(user);
+        entityManager.flush();
+
+        assertFalse(userAvailabilityService.isAliasTaken("elsewhere"));
+
+        userAvailabilityService.rebuild();
+
+        assertTrue(userAvailabilityService.isAliasTaken("elsewhere"));
+        assertTrue(userAvailabilityService.isEmailTaken("elsewhere@example.com"));
+    }
+
+    @Test
+    public void testRebuildTimeAndFalsePositiveRateAreExposed() {
+        assertTrue(meterRegistry.get("auth.availability.rebuild").timer().count() >= 1);
+        double rate = meterRegistry.get("auth.availability.false.positive.rate").tag("field", "alias").gauge().value();
+        assertTrue(rate >= 0 && rate < 0.01, "Unexpected false positive rate " + rate);
+    }
+}
@@ -0,0 +1,141 @@
+package se.jensen.linea.onsocial_app.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.jensen.linea.onsocial_app.DTO.PostRequestDTO;
+import se.jensen.linea.onsocial_app.DTO.UserRequestDTO;
+import se.jensen.linea.onsocial_app.config.CacheConfig;
+import se.jensen.linea.onsocial_app.mapper.ProfilePictureMapper;
+import se.jensen.linea.onsocial_app.mapper.UserMapper;
+import se.jensen.linea.onsocial_app.security.CustomUserDetailsService;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Säkerställer att användarcachen som används vid inloggning inte behåller gamla uppgifter
+ * när en inloggning sker medan en ändring av användaren ännu inte är committad, och att
+ * cachade inlägg inte visar ett gammalt alias efter att användaren bytt alias.
+ * <p>
+ * Testerna körs utan omslutande transaktion, så att varje anrop committas för sig.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({UserService.class, UserMapper.class, ProfilePictureMapper.class, BCryptPasswordEncoder.class, UserAvailabilityService.class,
+        AliasAutocompleteService.class, SimpleMeterRegistry.class, CustomUserDetailsService.class, PostService.class,
+        CacheConfig.class, UserServiceCacheTest.CacheManagerConfig.class})
+public class UserServiceCacheTest {
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private PostService postService;
+    @Autowired
+    private CustomUserDetailsService customUserDetailsService;
+    @Autowired
+    private BCryptPasswordEncoder passwordEncoder;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+    private Long userId;
+
+    @BeforeEach
+    public void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        userId = userService.createUser(request("OldPassword1")).id();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cacheManager.getCache(CacheConfig.USERS_CACHE).clear();
+        cacheManager.getCache(CacheConfig.POSTS_CACHE).clear();
+        jdbcTemplate.update("DELETE FROM posts");
+        jdbcTemplate.update("DELETE FROM users");
+    }
+
+    @Test
+    public void testLoginBetweenFlushAndCommitDoesNotKeepOldPassword() throws Exception {
+        assertTrue(passwordEncoder.matches("OldPassword1", customUserDetailsService.loadUserByUsername("linea").getPassword()));
+
+        ExecutorService login = Executors.newSingleThreadExecutor();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // Flushed but not committed yet
+                userService.updateUser(userId, request("NewPassword1"));
+                try {
+                    // A concurrent login still sees the committed row
+                    UserDetails concurrent = login.submit(() -> customUserDetailsService.loadUserByUsername("linea")).get();
+                    assertTrue(passwordEncoder.matches("OldPassword1", concurrent.getPassword()));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } finally {
+            login.shutdownNow();
+        }
+
+        String password = customUserDetailsService.loadUserByUsername("linea").getPassword();
+        assertTrue(passwordEncoder.matches("NewPassword1", password));
+        assertFalse(passwordEncoder.matches("OldPassword1", password));
+    }
+
+    @Test
+    public void testRenameEvictsCachedPosts() {
+        Long postId = postService.createPost(userId, "linea", new PostRequestDTO("Title", "Post content")).id();
+        assertEquals("linea", postService.findById(postId).userAlias());
+
+        // Changing only the password keeps the posts cached
+        userService.updateUser(userId, request("NewPassword1"));
+        assertNotNull(cacheManager.getCache(CacheConfig.POSTS_CACHE).get(postId));
+
+        userService.updateUser(userId, request("linea2", "NewPassword1"));
+
+        assertEquals("linea2", postService.findById(postId).userAlias());
+    }
+
+    private static UserRequestDTO request(String password) {
+        return request("linea", password);
+    }
+
+    private static UserRequestDTO request(String alias, String password) {
+        return new UserRequestDTO(alias, "linea@example.com", "Linea", "Jensen", password, null);
+    }
+
+    @TestConfiguration
+    static class CacheManagerConfig {
+
+        @Bean
+        public CacheManager cacheManager() {
+            return new ConcurrentMapCacheManager(CacheConfig.POSTS_CACHE, CacheConfig.USERS_CACHE);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package se.jensen.linea.onsocial_app.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import se.jensen.linea.onsocial_app.mapper.ProfilePictureMapper;
+import se.jensen.linea.onsocial_app.mapper.UserMapper;
+import se.jensen.linea.onsocial_app.model.User;
+import se.jensen.linea.onsocial_app.repository.UserRepository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Säkerställer att en användare med väldigt många inlägg raderas med DELETE-satser i omgångar,
+ * utan att inläggen laddas in i minnet (persistence context), och att varje omgång committas för sig.
+ * <p>
+ * Testerna körs utan omslutande transaktion, annars skulle alla omgångar hamna i testets transaktion.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({UserService.class, UserMapper.class, ProfilePictureMapper.class, BCryptPasswordEncoder.class, UserAvailabilityService.class, AliasAutocompleteService.class, SimpleMeterRegistry.class})
+public class UserServiceDeleteTest {
+
+    private static final int POST_COUNT = 100_000;
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM posts");
+        jdbcTemplate.update("DELETE FROM users");
+    }
+
+    @Test
+    public void testDeleteUserWithManyPosts() {
+        User user = new User();
+        user.setAlias("heavyposter");
+        user.setEmail("heavy@example.com");
+        user.setFirstName("Heavy");
+        user.setLastName("Poster");
+        user.setPassword("secret");
+        Long userId = userRepository.save(user).getId();
+
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> rows = new ArrayList<>(POST_COUNT);
+        for (int i = 1; i <= POST_COUNT; i++) {
+            rows.add(new Object[]{(long) i, "Title " + i, "Content " + i, now, now, userId});
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO posts (id, title, post_content, created_at, updated_at, version, user_id) "
+                        + "VALUES (?, ?, ?, ?, ?, 0, ?)", rows);
+        rows.clear();
+
+        Statistics statistics = entityManagerFactory
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+
+        // Act
+        boolean deleted = userService.deleteUser(userId);
+
+        // Assert
+        assertTrue(deleted);
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM posts", Long.class));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class));
+
+        // No post was ever loaded as an entity, so heap use does not grow with the number of posts
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getEntityFetchCount());
+        // A boundary lookup and a range delete per chunk, then the empty lookup, the lock, the remainder and the user
+        int chunks = POST_COUNT / UserService.DELETE_CHUNK_SIZE;
+        assertEquals(2L * chunks + 4, statistics.getPrepareStatementCount());
+        // Each chunk was committed in a short transaction of its own, the remainder together with the user
+        assertEquals(chunks + 1, statistics.getSuccessfulTransactionCount());
+        assertEquals(statistics.getTransactionCount(), statistics.getSuccessfulTransactionCount());
+    }
+
+    @Test
+    public void testDeleteMissingUser() {
+        assertFalse(userService.deleteUser(424242L));
+    }
+}
@@ -0,0 +1,140 @@
+package se.jensen.linea.onsocial_app.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.jensen.linea.onsocial_app.DTO.UserRequestDTO;
+import se.jensen.linea.onsocial_app.DTO.UserResponseDTO;
+import se.jensen.linea.onsocial_app.exception.GlobalExceptionHandler;
+import se.jensen.linea.onsocial_app.mapper.ProfilePictureMapper;
+import se.jensen.linea.onsocial_app.mapper.UserMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Säkerställer att dubbletter vid registrering stoppas av databasens unik-villkor,
+ * även när flera registreringar med samma alias sker samtidigt, och att felet blir
+ * samma svar som tidigare ("Alias already exists" / "E-mail already exists"), och att en
+ * registrering som rullas tillbaka inte hamnar i aliasindexet.
+ * <p>
+ * Testerna körs utan omslutande transaktion, så att varje registrering committas för sig.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({UserService.class, UserMapper.class, ProfilePictureMapper.class, BCryptPasswordEncoder.class, UserAvailabilityService.class, AliasAutocompleteService.class, SimpleMeterRegistry.class})
+public class UserServiceRegistrationTest {
+
+    private static final int REGISTRATIONS = 8;
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private AliasAutocompleteService aliasAutocompleteService;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final GlobalExceptionHandler exceptionHandler = new GlobalExceptionHandler();
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM users");
+    }
+
+    @Test
+    public void testParallelRegistrationsWithSameAlias() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(REGISTRATIONS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<UserResponseDTO>> results = new ArrayList<>();
+            for (int i = 0; i < REGISTRATIONS; i++) {
+                UserRequestDTO request = request("racer", "racer" + i + "@example.com");
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return userService.createUser(request);
+                }));
+            }
+            start.countDown();
+
+            int created = 0;
+            for (Future<UserResponseDTO> result : results) {
+                try {
+                    result.get(30, TimeUnit.SECONDS);
+                    created++;
+                } catch (java.util.concurrent.ExecutionException e) {
+                    DataIntegrityViolationException violation =
+                            assertInstanceOf(DataIntegrityViolationException.class, e.getCause());
+                    assertDuplicate(violation, "Alias already exists");
+                }
+            }
+
+            assertEquals(1, created);
+            assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE alias = 'racer'", Long.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDuplicateEmailOnRegistrationAndUpdate() {
+        userService.createUser(request("linea", "linea@example.com"));
+        UserResponseDTO other = userService.createUser(request("simeon", "simeon@example.com"));
+
+        DataIntegrityViolationException onCreate = assertThrows(DataIntegrityViolationException.class,
+                () -> userService.createUser(request("someone", "linea@example.com")));
+        assertDuplicate(onCreate, "E-mail already exists");
+
+        DataIntegrityViolationException onUpdate = assertThrows(DataIntegrityViolationException.class,
+                () -> userService.updateUser(other.id(), request("linea", "simeon@example.com")));
+        assertDuplicate(onUpdate, "Alias already exists");
+    }
+
+    @Test
+    public void testRolledBackRegistrationIsNotSuggested() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            userService.createUser(request("phantom", "phantom@example.com"));
+            status.setRollbackOnly();
+        });
+
+        assertTrue(aliasAutocompleteService.complete("phantom", 10).isEmpty());
+
+        userService.createUser(request("phantom", "phantom@example.com"));
+
+        assertEquals("phantom", aliasAutocompleteService.complete("phantom", 10).get(0).alias());
+    }
+
+    private void assertDuplicate(DataIntegrityViolationException violation, String message) {
+        ResponseEntity<Map<String, String>> response = exceptionHandler.handleDataIntegrityViolation(violation);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(message, response.getBody().get("error"));
+    }
+
+    private static UserRequestDTO request(String alias, String email) {
+        return new UserRequestDTO(alias, email, "Linea", "Jensen", "Password1", null);
+    }
+}
@@ -3,19 +3,25 @@ package se.jensen.linea.onsocial_app.service;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import se.jensen.linea.onsocial_app.DTO.CursorPageDTO;
 import se.jensen.linea.onsocial_app.DTO.UserResponceDtoBuilder;
 import se.jensen.linea.onsocial_app.DTO.UserResponseDTO;
 import se.jensen.linea.onsocial_app.mapper.UserMapper;
 import se.jensen.linea.onsocial_app.model.User;
+import se.jensen.linea.onsocial_app.repository.PostRepository;
 import se.jensen.linea.onsocial_app.repository.UserRepository;
 
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -27,30 +33,41 @@ public class UserServiceTest {
     @Mock
     private UserRepository userRepository;
     @Mock
+    private PostRepository postRepository;
+    @Mock
     private UserMapper userMapper;
+    @Mock
+    private AliasAutocompleteService aliasAutocompleteService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
 
 
     @Test
-    public void testGetAllUsers() {
+    public void testFindUsers() {
         //Arrange
-        User user = new User();
-        user.setId(1L);
-        user.setAlias("alias");
-        //Act
-
-        User user2 = new User();
-        user2.setId(2L);
-        user2.setAlias("alias2");
-        List<User> users = List.of(user, user2);
+        UserResponseDTO user = UserResponceDtoBuilder.builder().withId(1L).withAlias("alias").build();
+        UserResponseDTO user2 = UserResponceDtoBuilder.builder().withId(2L).withAlias("alias2").build();
+        UserResponseDTO user3 = UserResponceDtoBuilder.builder().withId(3L).withAlias("alias3").build();
 
-        when(userRepository.findAll()).thenReturn(users);
+        when(userRepository.findDirectory("ali", "ali%", "", Limit.of(3))).thenReturn(List.of(user, user2, user3));
+        when(userRepository.findDirectory("ali", "ali%", "alias2", Limit.of(3))).thenReturn(List.of(user3));
+        when(userMapper.withProfilePictureVariants(any(UserResponseDTO.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         //Act
-        List<UserResponseDTO> result = userService.getAllUsers();
+        CursorPageDTO<UserResponseDTO> first = userService.findUsers("ali", 2, null);
+        CursorPageDTO<UserResponseDTO> second = userService.findUsers("ali", 2, first.next());
 
         //Assert
-        assertEquals(2, result.size());
+        assertEquals(2, first.items().size());
+        assertEquals(List.of(user3), second.items());
+        assertNull(second.next());
+        verify(userRepository, never()).findAll();
+    }
 
+    @Test
+    public void testLikePrefixEscapesWildcards() {
+        assertEquals("%", UserService.likePrefix(""));
+        assertEquals("li!_n!%a!!%", UserService.likePrefix("li_n%a!"));
     }
 
     @Test
@@ -83,8 +100,9 @@ public class UserServiceTest {
 
         Long userId = 1L;
 
-        when(userRepository.existsById(userId)).thenReturn(true);
-        doNothing().when(userRepository).deleteById(userId);
+        when(postRepository.findDeleteBoundary(userId, UserService.DELETE_CHUNK_SIZE - 1)).thenReturn(42L, (Long) null);
+        when(userRepository.lockById(userId)).thenReturn(userId);
+        when(userRepository.deleteUserById(userId)).thenReturn(1);
 
         // Act
 
@@ -92,8 +110,17 @@ public class UserServiceTest {
 
         // Assert
         assertTrue(result);
-        verify(userRepository).existsById(userId);
-        verify(userRepository).deleteById(userId);
+        verify(postRepository).deleteByUserIdUpTo(userId, 42L);
+        verify(postRepository).deleteByUserIdUpTo(userId, Long.MAX_VALUE);
+        verify(userRepository).deleteUserById(userId);
+        verify(userRepository, never()).existsById(userId);
+        // The user row is locked before the last chunk, and both go in one transaction
+        InOrder lastChunk = inOrder(transactionManager, userRepository, postRepository);
+        lastChunk.verify(transactionManager).getTransaction(any());
+        lastChunk.verify(userRepository).lockById(userId);
+        lastChunk.verify(postRepository).deleteByUserIdUpTo(userId, Long.MAX_VALUE);
+        lastChunk.verify(userRepository).deleteUserById(userId);
+        lastChunk.verify(transactionManager).commit(any());
 
     }
 